@@ -38,6 +38,15 @@ export interface SendCodeRequest {
 export interface SendCodeResponse {
   success: boolean
   msg: string
+  remaining_seconds?: number
+  deliveryId?: string
+}
+
+export interface MailStatusResponse {
+  success: boolean
+  status?: 'queued' | 'sending' | 'retrying' | 'sent' | 'failed'
+  attempts?: number
+  msg?: string
 }
 
 export interface RegisterRequest {
@@ -147,6 +156,11 @@ class ApiService {
     })
   }
 
+  // 查询验证码邮件投递状态
+  async getMailStatus(deliveryId: string, language: string): Promise<MailStatusResponse> {
+    return this.request<MailStatusResponse>(`/mail-status?id=${encodeURIComponent(deliveryId)}&language=${encodeURIComponent(language)}`)
+  }
+
   // 注册用户
   async register(data: RegisterRequest): Promise<RegisterResponse> {
     return this.request<RegisterResponse>('/register', {
@@ -16,10 +16,16 @@ import java.util.Properties;
 import java.util.MissingResourceException;
 import team.kitemc.verifymc.db.UserDao;
 import team.kitemc.verifymc.db.AuditDao;
+import team.kitemc.verifymc.db.IndexedUserDao;
+import team.kitemc.verifymc.db.JournalUserDao;
 import team.kitemc.verifymc.db.MysqlAuditDao;
+import team.kitemc.verifymc.db.MysqlConnectionPool;
 import team.kitemc.verifymc.db.MysqlUserDao;
+import team.kitemc.verifymc.db.SnapshotWriter;
 import team.kitemc.verifymc.service.AuthmeService;
 import team.kitemc.verifymc.service.VersionCheckService;
+import team.kitemc.verifymc.service.WhitelistQueue;
+import team.kitemc.verifymc.service.AuditRecorder;
 
 import java.util.List;
 import java.util.Map;
@@ -43,12 +49,19 @@ public class VerifyMC extends JavaPlugin implements Listener {
     private ReviewWebSocketServer wsServer;
     // User data access object interface
     private UserDao userDao;
+    // Login status index wrapping userDao
+    private IndexedUserDao indexedUserDao;
     // Audit data access object interface
     private AuditDao auditDao;
+    // MySQL connection pool shared by the DAOs (mysql storage only)
+    private MysqlConnectionPool mysqlPool;
     private VerifyCodeService codeService;
     private MailService mailService;
     private AuthmeService authmeService;
     private VersionCheckService versionCheckService;
+    // Batched server whitelist changes, applied on the main thread
+    private WhitelistQueue whitelistQueue;
+    private AuditRecorder auditRecorder;
     private ResourceManager resourceManager;
     private String whitelistMode;
     private boolean whitelistJsonSync;
@@ -118,6 +131,7 @@ public class VerifyMC extends JavaPlugin implements Listener {
         mailService = new MailService(this, this::getMessage);
         authmeService = new AuthmeService(this);
         versionCheckService = new VersionCheckService(this);
+        whitelistQueue = new WhitelistQueue(this);
         String storageType = getConfig().getString("storage.type", "data");
         String lang = getConfig().getString("language", "en");
         ResourceBundle messages;
@@ -136,26 +150,46 @@ public class VerifyMC extends JavaPlugin implements Listener {
             mysqlConfig.setProperty("user", getConfig().getString("storage.mysql.user"));
             mysqlConfig.setProperty("password", getConfig().getString("storage.mysql.password"));
             try {
-                userDao = new MysqlUserDao(mysqlConfig, messages, this);
-                auditDao = new MysqlAuditDao(mysqlConfig);
+                // One pool shared by the user and audit DAOs
+                mysqlPool = new MysqlConnectionPool(mysqlConfig, this);
+                userDao = new MysqlUserDao(mysqlPool, messages, this);
+                auditDao = new MysqlAuditDao(mysqlPool, this);
                 getLogger().info(messages.getString("storage.mysql.enabled"));
             } catch (Exception e) {
+                if (mysqlPool != null) {
+                    mysqlPool.close();
+                    mysqlPool = null;
+                }
                 getLogger().severe(messages.getString("storage.migrate.fail").replace("{0}", e.getMessage()));
                 getServer().getPluginManager().disablePlugin(this);
                 return;
             }
+        } else if ("journal".equalsIgnoreCase(storageType)) {
+            // Same users.json snapshot as file storage, plus an append-only journal of changes since the last compaction
+            File userFile = new File(getDataFolder(), "data/users.json");
+            File journalFile = new File(getDataFolder(), "data/users.journal");
+            File auditFile = new File(getDataFolder(), "data/audits.json");
+            userFile.getParentFile().mkdirs();
+            userDao = new JournalUserDao(userFile, journalFile, this);
+            auditDao = new FileAuditDao(auditFile, this);
+            getLogger().info(messages.getString("storage.journal.enabled"));
         } else {
             File userFile = new File(getDataFolder(), "data/users.json");
             File auditFile = new File(getDataFolder(), "data/audits.json");
             userFile.getParentFile().mkdirs();
             auditFile.getParentFile().mkdirs();
             userDao = new FileUserDao(userFile, this);
-            auditDao = new FileAuditDao(auditFile);
+            auditDao = new FileAuditDao(auditFile, this);
             getLogger().info(messages.getString("storage.file.enabled"));
         }
         autoMigrateIfNeeded(messages);
+        // Wrap storage with the login status index after migration so it starts from the final data
+        indexedUserDao = new IndexedUserDao(userDao, this);
+        userDao = indexedUserDao;
+        startLoginCacheRefresh();
         // Initialize file storage
         // Remove duplicate userDao/auditDao assignments
+        auditRecorder = new AuditRecorder(this, auditDao);
         // Start WebSocket server (must be before webServer)
         int port = config.getInt("web_port", 8080);
         int wsPort = config.getInt("ws_port", port + 1);
@@ -169,7 +203,7 @@ public class VerifyMC extends JavaPlugin implements Listener {
         // Start web server
         String theme = config.getString("frontend.theme", "default");
         String staticDir = resourceManager.getThemeStaticDir(theme);
-        webServer = new WebServer(port, staticDir, this, codeService, mailService, userDao, auditDao, authmeService, wsServer, messages);
+        webServer = new WebServer(port, staticDir, this, codeService, mailService, userDao, auditDao, authmeService, wsServer, whitelistQueue, auditRecorder, messages);
         try {
             webServer.start();
             getLogger().info(getMessage("web.start_success") + ": " + port);
@@ -236,6 +270,13 @@ public class VerifyMC extends JavaPlugin implements Listener {
     @Override
     public void onDisable() {
         if (webServer != null) webServer.stop();
+        // Scheduled drains are cancelled with the plugin, apply what is left now
+        if (whitelistQueue != null) whitelistQueue.flush();
+        // Write buffered audit entries before the audit storage is closed
+        if (auditRecorder != null) auditRecorder.shutdown();
+        // Give queued verification emails a few seconds to go out
+        if (mailService != null) mailService.shutdown();
+        if (codeService != null) codeService.shutdown();
         if (wsServer != null) {
             try {
                 wsServer.stop();
@@ -245,12 +286,19 @@ public class VerifyMC extends JavaPlugin implements Listener {
                 Thread.currentThread().interrupt();
             }
         }
-        // Save data when plugin is disabled
-        if (userDao != null) userDao.save();
-        if (auditDao != null) auditDao.save();
+        // Save data when plugin is disabled, forcing any pending write-behind flush
+        if (userDao != null) {
+            userDao.save();
+            userDao.close();
+        }
+        if (auditDao != null) {
+            auditDao.save();
+            auditDao.close();
+        }
         if ("bukkit".equalsIgnoreCase(whitelistMode) && whitelistJsonSync) {
             syncPluginToWhitelistJson();
         }
+        if (mysqlPool != null) mysqlPool.close();
         getLogger().info(getMessage("plugin.disabled"));
     }
 
@@ -538,12 +586,10 @@ public class VerifyMC extends JavaPlugin implements Listener {
             return; // Skip verification for whitelisted IPs
         }
         
-        // Check player name (id) in plugin database
-        Map<String, Object> user = userDao != null ? userDao.getAllUsers().stream()
-            .filter(u -> player.getName().equalsIgnoreCase((String)u.get("username")) && "approved".equals(u.get("status")))
-            .findFirst().orElse(null) : null;
+        // Check player name (id) against the in-memory status index
+        boolean approved = indexedUserDao != null && indexedUserDao.isApproved(player.getName());
         
-        if (user == null) {
+        if (!approved) {
             // Player is not in approved list
             String url = webRegisterUrl;
             String msg = "§c[ ntart ]\n§7请用浏览器访问https://reg.ntart.cn/注册白名单 官方Q群1071595115";
@@ -559,6 +605,28 @@ public class VerifyMC extends JavaPlugin implements Listener {
         }
     }
 
+    /**
+     * Periodically rebuild the login status index to pick up changes made outside this server
+     * (e.g. another server sharing the same MySQL database)
+     */
+    private void startLoginCacheRefresh() {
+        long intervalSeconds = getConfig().getLong("login_cache.refresh_interval_seconds", 300);
+        if (intervalSeconds <= 0 || indexedUserDao == null) return;
+        // Folia doesn't support async repeating tasks, the index is still kept in sync by local mutations
+        if (isFoliaServer()) return;
+        long intervalTicks = intervalSeconds * 20L;
+        new BukkitRunnable() {
+            @Override
+            public void run() {
+                try {
+                    indexedUserDao.rebuildIndex();
+                } catch (Exception e) {
+                    debugLog("Login cache refresh failed: " + e.getMessage());
+                }
+            }
+        }.runTaskTimerAsynchronously(this, intervalTicks, intervalTicks);
+    }
+
     /**
      * Monitor whitelist.json changes in bukkit mode
      */
@@ -591,22 +659,22 @@ public class VerifyMC extends JavaPlugin implements Listener {
             for (Map<String, Object> entry : list) {
                 String uuid = (String) entry.get("uuid");
                 if (uuid != null) {
-                    Map<String, Object> user = userDao.getAllUsers().stream().filter(u -> uuid.equals(u.get("uuid"))).findFirst().orElse(null);
+                    Map<String, Object> user = userDao.getUserByUuid(uuid);
                     if (user != null) {
                         Object whitelisted = entry.get("whitelisted");
                         // Only update status if user is currently pending and whitelist.json shows approved
                         // This prevents overriding manually set statuses
+                        // Updates go through userDao so the login status index stays in sync
                         String currentStatus = (String) user.get("status");
                         if ("pending".equals(currentStatus) && Boolean.TRUE.equals(whitelisted)) {
-                            user.put("status", "approved");
-                        } else if (!"approved".equals(currentStatus) && !"banned".equals(currentStatus) && !Boolean.TRUE.equals(whitelisted)) {
+                            userDao.updateUserStatus(uuid, "approved");
+                        } else if (!"approved".equals(currentStatus) && !"banned".equals(currentStatus) && !"pending".equals(currentStatus) && !Boolean.TRUE.equals(whitelisted)) {
                             // Only set to pending if not already explicitly set
-                            user.put("status", "pending");
+                            userDao.updateUserStatus(uuid, "pending");
                         }
                     }
                 }
             }
-            userDao.save();
         } catch (Exception ignored) {}
     }
 
@@ -628,7 +696,8 @@ public class VerifyMC extends JavaPlugin implements Listener {
                 }
             }
             String json = new GsonBuilder().setPrettyPrinting().create().toJson(wl);
-            Files.write(whitelistJsonPath, json.getBytes(java.nio.charset.StandardCharsets.UTF_8), java.nio.file.StandardOpenOption.CREATE, java.nio.file.StandardOpenOption.TRUNCATE_EXISTING);
+            // The server reads whitelist.json on its own, never let it observe a half-written file
+            SnapshotWriter.write(whitelistJsonPath.toFile(), writer -> writer.write(json));
         } catch (Exception ignored) {}
     }
 
@@ -655,39 +724,35 @@ public class VerifyMC extends JavaPlugin implements Listener {
     public boolean isUsernameCaseConflict(String username) {
         boolean caseSensitive = getConfig().getBoolean(USERNAME_CASE_SENSITIVE_KEY, false);
         if (caseSensitive) return false;
-        for (Map<String, Object> user : userDao.getAllUsers()) {
-            String exist = (String) user.get("username");
-            if (exist != null && exist.equalsIgnoreCase(username) && !exist.equals(username)) return true;
-        }
-        return false;
+        // Case-insensitive lookup is index backed, no need to scan all users
+        Map<String, Object> user = userDao.getUserByUsername(username);
+        String exist = user != null ? (String) user.get("username") : null;
+        return exist != null && exist.equalsIgnoreCase(username) && !exist.equals(username);
     }
 
     /**
-     * Synchronize whitelist to server
+     * Synchronize whitelist to server through the batched whitelist queue
      */
     private void syncWhitelistToServer() {
         for (Map<String, Object> user : userDao.getAllUsers()) {
             String name = (String) user.get("username");
             String status = (String) user.get("status");
             if ("approved".equals(status)) {
-                Bukkit.getOfflinePlayer(name).setWhitelisted(true);
+                whitelistQueue.add(name);
             } else if ("banned".equals(status)) {
-                Bukkit.getOfflinePlayer(name).setWhitelisted(false);
+                whitelistQueue.remove(name);
             }
         }
     }
     
     /**
-     * Clean up server whitelist
+     * Clean up server whitelist; approved users are already whitelisted and left untouched
      */
     private void cleanupServerWhitelist() {
         for (org.bukkit.OfflinePlayer p : Bukkit.getWhitelistedPlayers()) {
             Map<String, Object> user = userDao.getUserByUsername(p.getName());
             if (user == null || !"approved".equals(user.get("status"))) {
-                p.setWhitelisted(false);
-            } else {
-                // Ensure approved users stay whitelisted
-                p.setWhitelisted(true);
+                whitelistQueue.remove(p.getName());
             }
         }
     }
@@ -718,7 +783,9 @@ public class VerifyMC extends JavaPlugin implements Listener {
             } else if ("data".equalsIgnoreCase(storageType) && userDao instanceof FileUserDao) {
                 // mysql -> data
                 try {
-                    List<Map<String, Object>> mysqlUsers = new MysqlUserDao(getMysqlConfig(), messages, this).getAllUsers();
+                    MysqlUserDao mysqlDao = new MysqlUserDao(getMysqlConfig(), messages, this);
+                    List<Map<String, Object>> mysqlUsers = mysqlDao.getAllUsers();
+                    mysqlDao.close();
                     List<Map<String, Object>> fileUsers = userDao.getAllUsers();
                     if (!mysqlUsers.equals(fileUsers)) {
                         for (Map<String, Object> user : mysqlUsers) {
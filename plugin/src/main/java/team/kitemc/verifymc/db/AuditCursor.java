@@ -0,0 +1,73 @@
+package team.kitemc.verifymc.db;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+
+/**
+ * Keyset pagination position in the audit history (ordered by timestamp, then id, both descending).
+ * Serialized as an opaque URL-safe token for the web API.
+ */
+public final class AuditCursor {
+    private final long timestamp;
+    private final long id;
+
+    public AuditCursor(long timestamp, long id) {
+        this.timestamp = timestamp;
+        this.id = id;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * Cursor pointing after the given audit
+     * @param audit Audit map as returned by AuditDao
+     * @return Cursor, or null if audit is null
+     */
+    public static AuditCursor after(Map<String, Object> audit) {
+        if (audit == null) return null;
+        return new AuditCursor(toLong(audit.get("timestamp")), toLong(audit.get("id")));
+    }
+
+    static long toLong(Object value) {
+        if (value instanceof Number) return ((Number) value).longValue();
+        if (value != null) {
+            try {
+                return Long.parseLong(value.toString());
+            } catch (NumberFormatException ignored) {}
+        }
+        return 0L;
+    }
+
+    /**
+     * Encode as an opaque token
+     * @return URL-safe token
+     */
+    public String encode() {
+        String raw = timestamp + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decode a token created by {@link #encode()}
+     * @param token Token, may be null
+     * @return Cursor, or null if the token is missing or invalid
+     */
+    public static AuditCursor decode(String token) {
+        if (token == null || token.isEmpty()) return null;
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int sep = raw.indexOf(':');
+            if (sep <= 0) return null;
+            return new AuditCursor(Long.parseLong(raw.substring(0, sep)), Long.parseLong(raw.substring(sep + 1)));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
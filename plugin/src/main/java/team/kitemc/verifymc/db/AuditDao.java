@@ -5,6 +5,31 @@ import java.util.Map;
 
 public interface AuditDao {
     void addAudit(Map<String, Object> audit);
+
+    /**
+     * Store several audit entries with one write
+     * @param audits Audit entries in the order they happened
+     * @return Number of entries stored, less than the list size if some could not be written
+     */
+    int addAudits(List<Map<String, Object>> audits);
     List<Map<String, Object>> getAllAudits();
+
+    /**
+     * Query audit history newest first
+     * @param action Exact action, null for any
+     * @param operator Operator, null for any
+     * @param target Target, null for any
+     * @param since Earliest timestamp in milliseconds (inclusive), 0 for no limit
+     * @param until Latest timestamp in milliseconds (exclusive), 0 for no limit
+     * @param after Cursor from the previous page, null for the first page
+     * @param limit Maximum number of audits to return
+     * @return Matching audits ordered by timestamp, then id, both descending, or null if the storage could not be read
+     */
+    List<Map<String, Object>> queryAudits(String action, String operator, String target, long since, long until, AuditCursor after, int limit);
     void save();
+
+    /**
+     * Flush pending writes and release storage resources
+     */
+    void close();
 } 
\ No newline at end of file
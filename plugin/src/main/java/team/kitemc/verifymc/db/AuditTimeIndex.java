@@ -0,0 +1,129 @@
+package team.kitemc.verifymc.db;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * In-memory index of the file audit log, bucketed by hour of the audit timestamp.
+ * Only the filterable fields and the record's file position are kept; details stay on disk
+ * and are read back by offset for the audits on the requested page.
+ * Not thread-safe, access is serialized by the owning DAO.
+ */
+class AuditTimeIndex {
+    private static final long BUCKET_MILLIS = 3600_000L;
+
+    /**
+     * A log file; rotation renames the file of the active segment
+     */
+    static final class Segment {
+        File file;
+
+        Segment(File file) {
+            this.file = file;
+        }
+    }
+
+    static final class Entry implements Comparable<Entry> {
+        final long id;
+        final long timestamp;
+        final String action;
+        final String operator;
+        final String target;
+        final Segment segment;
+        final long offset;
+
+        Entry(long id, long timestamp, String action, String operator, String target, Segment segment, long offset) {
+            this.id = id;
+            this.timestamp = timestamp;
+            this.action = action;
+            this.operator = operator;
+            this.target = target;
+            this.segment = segment;
+            this.offset = offset;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            int c = Long.compare(timestamp, other.timestamp);
+            return c != 0 ? c : Long.compare(id, other.id);
+        }
+    }
+
+    // Bucket start -> entries ordered by (timestamp, id) ascending
+    private final TreeMap<Long, List<Entry>> buckets = new TreeMap<>();
+    private int size = 0;
+
+    private static long bucketOf(long timestamp) {
+        return Math.floorDiv(timestamp, BUCKET_MILLIS);
+    }
+
+    void add(Entry entry) {
+        List<Entry> bucket = buckets.computeIfAbsent(bucketOf(entry.timestamp), key -> new ArrayList<>());
+        // Audits almost always arrive in time order, so this is normally an append
+        if (bucket.isEmpty() || bucket.get(bucket.size() - 1).compareTo(entry) <= 0) {
+            bucket.add(entry);
+        } else {
+            int pos = Collections.binarySearch(bucket, entry);
+            bucket.add(pos < 0 ? -pos - 1 : pos, entry);
+        }
+        size++;
+    }
+
+    /**
+     * Drop all entries of a deleted log file
+     * @param segment Segment of the file
+     */
+    void removeSegment(Segment segment) {
+        buckets.values().removeIf(bucket -> {
+            int before = bucket.size();
+            bucket.removeIf(entry -> entry.segment == segment);
+            size -= before - bucket.size();
+            return bucket.isEmpty();
+        });
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Find matching entries newest first, visiting only the buckets inside the time range
+     * @param action Exact action, null for any
+     * @param operator Operator (case-insensitive), null for any
+     * @param target Target (case-insensitive), null for any
+     * @param since Earliest timestamp (inclusive), 0 for no limit
+     * @param until Latest timestamp (exclusive), 0 for no limit
+     * @param after Cursor, only entries ordered after it are returned
+     * @param limit Maximum number of entries
+     * @return Entries ordered by timestamp then id, both descending
+     */
+    List<Entry> query(String action, String operator, String target, long since, long until, AuditCursor after, int limit) {
+        List<Entry> result = new ArrayList<>();
+        if (limit <= 0 || buckets.isEmpty()) return result;
+        long upper = Long.MAX_VALUE;
+        if (until > 0) upper = until - 1;
+        if (after != null) upper = Math.min(upper, after.getTimestamp());
+        if (since > upper) return result;
+        Map<Long, List<Entry>> range = since > 0
+                ? buckets.subMap(bucketOf(since), true, bucketOf(upper), true).descendingMap()
+                : buckets.headMap(bucketOf(upper), true).descendingMap();
+        for (List<Entry> bucket : range.values()) {
+            for (int i = bucket.size() - 1; i >= 0; i--) {
+                Entry entry = bucket.get(i);
+                if (entry.timestamp > upper) continue;
+                if (since > 0 && entry.timestamp < since) break;
+                if (after != null && entry.timestamp == after.getTimestamp() && entry.id >= after.getId()) continue;
+                if (action != null && !action.equals(entry.action)) continue;
+                if (operator != null && !operator.equalsIgnoreCase(entry.operator)) continue;
+                if (target != null && !target.equalsIgnoreCase(entry.target)) continue;
+                result.add(entry);
+                if (result.size() >= limit) return result;
+            }
+        }
+        return result;
+    }
+}
@@ -1,43 +1,489 @@
 package team.kitemc.verifymc.db;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import com.google.gson.reflect.TypeToken;
 import com.google.gson.Gson;
+import org.bukkit.plugin.Plugin;
 
+/**
+ * Append-only audit log: one JSON record per line in audits.jsonl, written through a buffered writer
+ * and fsynced at most once per configured interval. The active file is rotated to
+ * audits-yyyyMMdd-HHmmss-SSS.jsonl once it exceeds the size or age limit, and only the newest rotated files are kept.
+ * Audit history is read from disk on demand instead of being held in memory; queries use an hourly
+ * {@link AuditTimeIndex} of the filter fields and read only the matching records back by file offset.
+ */
 public class FileAuditDao implements AuditDao {
-    private final File file;
-    private final List<Map<String, Object>> audits = new ArrayList<>();
+    private static final java.lang.reflect.Type RECORD_TYPE = new TypeToken<Map<String, Object>>(){}.getType();
+    // After a failed rename the active file keeps being appended to; try again after this long
+    private static final long ROTATE_RETRY_MILLIS = 60_000;
+    private static final int MAX_SHARED_STRINGS = 4096;
+
+    private final File logFile;
+    private final File legacyFile;
+    private final Plugin plugin;
+    private final boolean debug;
     private final Gson gson = new Gson();
+    private final long fsyncIntervalMillis;
+    private final long maxFileBytes;
+    private final long rotateIntervalMillis;
+    private final int maxFiles;
+    private FileOutputStream logStream;
+    private OutputStream logWriter;
+    private long fileBytes;
+    private long fileStartedAt;
+    private long rotateRetryAt = 0;
+    // Index fields repeat a lot (actions, operators, frequent targets), entries share one instance per value
+    private final Map<String, String> sharedStrings = new HashMap<>();
+    private boolean dirty = false;
+    private ScheduledExecutorService syncExecutor;
+    private ScheduledFuture<?> scheduledSync;
+    private final AuditTimeIndex index = new AuditTimeIndex();
+    // Segments of the rotated files by file name, and of the active file
+    private final Map<String, AuditTimeIndex.Segment> rotatedSegments = new HashMap<>();
+    private AuditTimeIndex.Segment activeSegment;
+    private long nextId = 1;
+
+    /**
+     * @param dataFile Legacy audits.json file, the log is written next to it as audits.jsonl
+     * @param plugin Plugin instance, settings are read from storage.audit
+     */
+    public FileAuditDao(File dataFile, Plugin plugin) {
+        this.legacyFile = dataFile;
+        String name = dataFile.getName();
+        this.logFile = new File(dataFile.getParentFile(), (name.endsWith(".json") ? name.substring(0, name.length() - 5) : name) + ".jsonl");
+        this.plugin = plugin;
+        this.debug = plugin.getConfig().getBoolean("debug", false);
+        this.fsyncIntervalMillis = Math.max(0, plugin.getConfig().getLong("storage.audit.fsync_interval_ms", 1000));
+        this.maxFileBytes = Math.max(1, plugin.getConfig().getLong("storage.audit.max_file_size_kb", 10240)) * 1024;
+        this.rotateIntervalMillis = Math.max(0, plugin.getConfig().getLong("storage.audit.rotate_interval_hours", 24)) * 3600_000L;
+        this.maxFiles = Math.max(0, plugin.getConfig().getInt("storage.audit.max_files", 10));
+        openLog();
+        buildIndex();
+        migrateLegacy();
+    }
+
+    private void debugLog(String msg) {
+        if (debug) plugin.getLogger().info("[DEBUG] FileAuditDao: " + msg);
+    }
+
+    /**
+     * Open the active log for appending, cutting an incomplete trailing record left by a crash
+     */
+    private synchronized void openLog() {
+        try {
+            if (logFile.getParentFile() != null) logFile.getParentFile().mkdirs();
+            fileStartedAt = System.currentTimeMillis();
+            if (logFile.exists() && logFile.length() > 0) {
+                truncateIncompleteRecord();
+                fileStartedAt = firstTimestamp(logFile, fileStartedAt);
+            }
+            logStream = new FileOutputStream(logFile, true);
+            logWriter = new BufferedOutputStream(logStream, 65536);
+            fileBytes = logFile.length();
+        } catch (IOException e) {
+            plugin.getLogger().warning("[VerifyMC] Failed to open audit log: " + e.getMessage());
+            logStream = null;
+            logWriter = null;
+        }
+    }
+
+    private void truncateIncompleteRecord() throws IOException {
+        try (FileChannel channel = FileChannel.open(logFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            long position = size;
+            java.nio.ByteBuffer buffer = java.nio.ByteBuffer.allocate(1);
+            while (position > 0) {
+                buffer.clear();
+                channel.read(buffer, position - 1);
+                if (buffer.get(0) == '\n') break;
+                position--;
+            }
+            if (position < size) {
+                plugin.getLogger().warning("[VerifyMC] Discarding " + (size - position) + " bytes of incomplete audit data in " + logFile.getName());
+                channel.truncate(position);
+            }
+        }
+    }
 
-    public FileAuditDao(File dataFile) {
-        this.file = dataFile;
-        load();
+    /**
+     * @return Timestamp of the first record in the file, or the fallback if it has none
+     */
+    private long firstTimestamp(File file, long fallback) {
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            if (line == null || line.trim().isEmpty()) return fallback;
+            Map<String, Object> record = gson.fromJson(line, RECORD_TYPE);
+            Object timestamp = record != null ? record.get("timestamp") : null;
+            return timestamp instanceof Number ? ((Number) timestamp).longValue() : fallback;
+        } catch (Exception e) {
+            return fallback;
+        }
     }
 
-    public synchronized void load() {
-        if (!file.exists()) return;
-        try (Reader reader = new FileReader(file)) {
+    /**
+     * Move entries of a pre-JSONL audits.json array into the log once, then rename the old file
+     */
+    private synchronized void migrateLegacy() {
+        if (!legacyFile.exists() || logWriter == null) return;
+        try (Reader reader = new InputStreamReader(new FileInputStream(legacyFile), StandardCharsets.UTF_8)) {
             List<Map<String, Object>> loaded = gson.fromJson(reader, new TypeToken<List<Map<String, Object>>>(){}.getType());
-            if (loaded != null) audits.addAll(loaded);
-        } catch (Exception ignored) {}
+            if (loaded != null) {
+                for (Map<String, Object> audit : loaded) appendRecord(audit);
+            }
+            sync();
+            debugLog("Migrated " + (loaded != null ? loaded.size() : 0) + " audits from " + legacyFile.getName());
+        } catch (Exception e) {
+            plugin.getLogger().warning("[VerifyMC] Failed to migrate " + legacyFile.getName() + " to the audit log: " + e.getMessage());
+            return;
+        }
+        File migrated = new File(legacyFile.getParentFile(), legacyFile.getName() + ".migrated");
+        if (!legacyFile.renameTo(migrated)) {
+            plugin.getLogger().warning("[VerifyMC] Could not rename " + legacyFile.getName() + ", its audits may be imported again");
+        }
     }
 
     @Override
-    public synchronized void save() {
-        try (Writer writer = new FileWriter(file)) {
-            gson.toJson(audits, writer);
-        } catch (Exception ignored) {}
+    public void addAudit(Map<String, Object> audit) {
+        addAudits(Collections.singletonList(audit));
     }
 
+    /**
+     * Append a batch of records with a single flush
+     * @param audits Audit entries
+     */
     @Override
-    public void addAudit(Map<String, Object> audit) {
-        audits.add(audit);
-        save();
+    public synchronized int addAudits(List<Map<String, Object>> audits) {
+        if (audits.isEmpty()) return 0;
+        if (logWriter == null) {
+            plugin.getLogger().warning("[VerifyMC] Audit log unavailable, dropping " + audits.size() + " audit entries");
+            return 0;
+        }
+        try {
+            for (Map<String, Object> audit : audits) appendRecord(audit);
+            logWriter.flush();
+            dirty = true;
+            if (fsyncIntervalMillis == 0) {
+                sync();
+            } else if (scheduledSync == null) {
+                scheduleSync();
+            }
+            return audits.size();
+        } catch (IOException e) {
+            plugin.getLogger().warning("[VerifyMC] Failed to append to audit log: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * Buffer one record with the next id, rotating first if needed, and index it
+     */
+    private void appendRecord(Map<String, Object> audit) throws IOException {
+        if (shouldRotate()) rotate();
+        Map<String, Object> record = new LinkedHashMap<>();
+        long id = nextId++;
+        record.put("id", id);
+        for (Map.Entry<String, Object> field : audit.entrySet()) {
+            if (!"id".equals(field.getKey())) record.put(field.getKey(), field.getValue());
+        }
+        if (!(record.get("timestamp") instanceof Number)) record.put("timestamp", System.currentTimeMillis());
+        byte[] line = (gson.toJson(record) + "\n").getBytes(StandardCharsets.UTF_8);
+        long offset = fileBytes;
+        logWriter.write(line);
+        fileBytes += line.length;
+        indexRecord(record, activeSegment, offset);
+    }
+
+    private void indexRecord(Map<String, Object> record, AuditTimeIndex.Segment segment, long offset) {
+        index.add(new AuditTimeIndex.Entry(AuditCursor.toLong(record.get("id")), AuditCursor.toLong(record.get("timestamp")),
+                share(record.get("action")), share(record.get("operator")), share(record.get("target")), segment, offset));
+    }
+
+    /**
+     * Deduplicate an index string through a bounded map instead of the JVM string pool
+     */
+    private String share(Object value) {
+        if (value == null) return null;
+        String text = value.toString();
+        String shared = sharedStrings.get(text);
+        if (shared != null) return shared;
+        if (sharedStrings.size() >= MAX_SHARED_STRINGS) sharedStrings.clear();
+        sharedStrings.put(text, text);
+        return text;
+    }
+
+    /**
+     * Scan the rotated and active log files once and index every record by its byte offset.
+     * Records written before ids were stored get the next free id in file order.
+     */
+    private synchronized void buildIndex() {
+        activeSegment = new AuditTimeIndex.Segment(logFile);
+        List<Map<String, Object>> withoutId = new ArrayList<>();
+        List<AuditTimeIndex.Segment> withoutIdSegments = new ArrayList<>();
+        List<Long> withoutIdOffsets = new ArrayList<>();
+        List<File> files = rotatedFiles();
+        files.add(logFile);
+        for (File file : files) {
+            if (!file.exists()) continue;
+            AuditTimeIndex.Segment segment = file.equals(logFile) ? activeSegment : new AuditTimeIndex.Segment(file);
+            if (segment != activeSegment) rotatedSegments.put(file.getName(), segment);
+            try (InputStream in = new FileInputStream(file)) {
+                ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+                byte[] buffer = new byte[65536];
+                long position = 0;
+                long lineStart = 0;
+                int read;
+                while ((read = in.read(buffer)) > 0) {
+                    int start = 0;
+                    for (int i = 0; i < read; i++) {
+                        if (buffer[i] != '\n') continue;
+                        line.write(buffer, start, i - start);
+                        start = i + 1;
+                        String text = line.toString("UTF-8").trim();
+                        line.reset();
+                        if (!text.isEmpty()) {
+                            try {
+                                Map<String, Object> record = gson.fromJson(text, RECORD_TYPE);
+                                if (record != null && record.get("id") instanceof Number) {
+                                    nextId = Math.max(nextId, AuditCursor.toLong(record.get("id")) + 1);
+                                    indexRecord(record, segment, lineStart);
+                                } else if (record != null) {
+                                    withoutId.add(record);
+                                    withoutIdSegments.add(segment);
+                                    withoutIdOffsets.add(lineStart);
+                                }
+                            } catch (Exception e) {
+                                debugLog("Skipping invalid audit record in " + file.getName());
+                            }
+                        }
+                        lineStart = position + i + 1;
+                    }
+                    line.write(buffer, start, read - start);
+                    position += read;
+                }
+            } catch (IOException e) {
+                plugin.getLogger().warning("[VerifyMC] Failed to index audit log " + file.getName() + ": " + e.getMessage());
+            }
+        }
+        for (int i = 0; i < withoutId.size(); i++) {
+            withoutId.get(i).put("id", nextId++);
+            indexRecord(withoutId.get(i), withoutIdSegments.get(i), withoutIdOffsets.get(i));
+        }
+        debugLog("Indexed " + index.size() + " audits, next id " + nextId);
+    }
+
+    private boolean shouldRotate() {
+        if (fileBytes == 0) return false;
+        if (rotateRetryAt > 0 && System.currentTimeMillis() < rotateRetryAt) return false;
+        if (fileBytes >= maxFileBytes) return true;
+        return rotateIntervalMillis > 0 && System.currentTimeMillis() - fileStartedAt >= rotateIntervalMillis;
+    }
+
+    /**
+     * Close the active file under a timestamped name and start a new one
+     */
+    private void rotate() throws IOException {
+        sync();
+        logWriter.close();
+        logWriter = null;
+        logStream = null;
+        String stamp = new SimpleDateFormat("yyyyMMdd-HHmmss-SSS").format(new Date());
+        String base = logFile.getName().substring(0, logFile.getName().length() - ".jsonl".length());
+        File target = new File(logFile.getParentFile(), base + "-" + stamp + ".jsonl");
+        for (int i = 1; target.exists(); i++) {
+            target = new File(logFile.getParentFile(), base + "-" + stamp + "-" + i + ".jsonl");
+        }
+        if (!logFile.renameTo(target)) {
+            plugin.getLogger().warning("[VerifyMC] Failed to rotate audit log to " + target.getName() + ", retrying in " + (ROTATE_RETRY_MILLIS / 1000) + "s");
+            // The old file is appended to again, its index entries stay valid
+            rotateRetryAt = System.currentTimeMillis() + ROTATE_RETRY_MILLIS;
+        } else {
+            rotateRetryAt = 0;
+            debugLog("Rotated audit log to " + target.getName());
+            activeSegment.file = target;
+            rotatedSegments.put(target.getName(), activeSegment);
+            activeSegment = new AuditTimeIndex.Segment(logFile);
+        }
+        openLog();
+        if (logWriter == null) throw new IOException("audit log could not be reopened");
+        deleteOldFiles();
+    }
+
+    private void deleteOldFiles() {
+        if (maxFiles == 0) return;
+        List<File> rotated = rotatedFiles();
+        for (int i = 0; i < rotated.size() - maxFiles; i++) {
+            if (rotated.get(i).delete()) {
+                debugLog("Deleted old audit log " + rotated.get(i).getName());
+                AuditTimeIndex.Segment segment = rotatedSegments.remove(rotated.get(i).getName());
+                if (segment != null) index.removeSegment(segment);
+            }
+        }
+    }
+
+    /**
+     * @return Rotated log files, oldest first
+     */
+    private List<File> rotatedFiles() {
+        String base = logFile.getName().substring(0, logFile.getName().length() - ".jsonl".length()) + "-";
+        File[] files = logFile.getParentFile() != null ? logFile.getParentFile().listFiles((dir, n) -> n.startsWith(base) && n.endsWith(".jsonl")) : null;
+        List<File> result = files != null ? new ArrayList<>(Arrays.asList(files)) : new ArrayList<>();
+        // Compare without extension so a same-millisecond "-1" suffix sorts after its base name
+        result.sort(Comparator.comparing(f -> f.getName().substring(0, f.getName().length() - ".jsonl".length())));
+        return result;
+    }
+
+    private void scheduleSync() {
+        if (syncExecutor == null) {
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, task -> {
+                Thread thread = new Thread(task, "VerifyMC-AuditSync");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+            syncExecutor = executor;
+        }
+        scheduledSync = syncExecutor.schedule(this::save, fsyncIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void sync() throws IOException {
+        if (logWriter == null) return;
+        logWriter.flush();
+        logStream.getFD().sync();
+        dirty = false;
     }
 
     @Override
-    public List<Map<String, Object>> getAllAudits() {
-        return new ArrayList<>(audits);
+    public synchronized List<Map<String, Object>> getAllAudits() {
+        List<Map<String, Object>> result = new ArrayList<>();
+        try {
+            if (logWriter != null) logWriter.flush();
+        } catch (IOException e) {
+            debugLog("Error flushing audit log: " + e.getMessage());
+        }
+        List<File> files = rotatedFiles();
+        files.add(logFile);
+        for (File file : files) {
+            if (!file.exists()) continue;
+            try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.trim().isEmpty()) continue;
+                    try {
+                        Map<String, Object> audit = gson.fromJson(line, RECORD_TYPE);
+                        if (audit != null) result.add(audit);
+                    } catch (Exception e) {
+                        debugLog("Skipping invalid audit record in " + file.getName());
+                    }
+                }
+            } catch (IOException e) {
+                plugin.getLogger().warning("[VerifyMC] Failed to read audit log " + file.getName() + ": " + e.getMessage());
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized List<Map<String, Object>> queryAudits(String action, String operator, String target, long since, long until, AuditCursor after, int limit) {
+        try {
+            if (logWriter != null) logWriter.flush();
+        } catch (IOException e) {
+            debugLog("Error flushing audit log: " + e.getMessage());
+        }
+        List<AuditTimeIndex.Entry> entries = index.query(action, operator, target, since, until, after, limit);
+        List<Map<String, Object>> result = new ArrayList<>(entries.size());
+        Map<AuditTimeIndex.Segment, RandomAccessFile> open = new HashMap<>();
+        try {
+            for (AuditTimeIndex.Entry entry : entries) {
+                RandomAccessFile file = open.get(entry.segment);
+                if (file == null) {
+                    file = new RandomAccessFile(entry.segment.file, "r");
+                    open.put(entry.segment, file);
+                }
+                Map<String, Object> audit = readRecord(file, entry.offset);
+                if (audit == null) continue;
+                // Gson reads all numbers as doubles
+                audit.put("id", entry.id);
+                audit.put("timestamp", entry.timestamp);
+                result.add(audit);
+            }
+        } catch (IOException e) {
+            plugin.getLogger().warning("[VerifyMC] Failed to read audit log: " + e.getMessage());
+            return null;
+        } finally {
+            for (RandomAccessFile file : open.values()) {
+                try {
+                    file.close();
+                } catch (IOException ignored) {}
+            }
+        }
+        return result;
+    }
+
+    private Map<String, Object> readRecord(RandomAccessFile file, long offset) throws IOException {
+        file.seek(offset);
+        ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+        byte[] buffer = new byte[512];
+        int read;
+        outer:
+        while ((read = file.read(buffer)) > 0) {
+            for (int i = 0; i < read; i++) {
+                if (buffer[i] == '\n') {
+                    line.write(buffer, 0, i);
+                    break outer;
+                }
+            }
+            line.write(buffer, 0, read);
+        }
+        try {
+            return gson.fromJson(line.toString("UTF-8"), RECORD_TYPE);
+        } catch (Exception e) {
+            debugLog("Invalid audit record at offset " + offset + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Flush and fsync appended records
+     */
+    @Override
+    public synchronized void save() {
+        scheduledSync = null;
+        if (!dirty) return;
+        try {
+            sync();
+        } catch (IOException e) {
+            plugin.getLogger().warning("[VerifyMC] Failed to sync audit log: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Sync the log, close it and stop the background sync thread
+     */
+    @Override
+    public synchronized void close() {
+        save();
+        if (syncExecutor != null) {
+            syncExecutor.shutdownNow();
+            syncExecutor = null;
+        }
+        if (logWriter != null) {
+            try {
+                logWriter.close();
+            } catch (IOException e) {
+                debugLog("Error closing audit log: " + e.getMessage());
+            }
+            logWriter = null;
+            logStream = null;
+        }
     }
-} 
\ No newline at end of file
+}
@@ -1,22 +1,47 @@
 package team.kitemc.verifymc.db;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import com.google.gson.reflect.TypeToken;
-import com.google.gson.Gson;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 
 public class FileUserDao implements UserDao {
     private final File file;
-    private final Map<String, Map<String, Object>> users = new ConcurrentHashMap<>();
-    private final Gson gson = new Gson();
+    private final Map<String, UserRecord> users = new ConcurrentHashMap<>();
+    // Secondary indexes: lower-cased username/email -> UUIDs
+    private final Map<String, Set<String>> usernameIndex = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> emailIndex = new ConcurrentHashMap<>();
+    // Users ordered by regTime for the admin list
+    private final RegTimeIndex regTimeIndex = new RegTimeIndex();
+    // Trigram index over username/email for admin substring search
+    private final TrigramIndex searchIndex = new TrigramIndex();
     private final boolean debug;
     private final org.bukkit.plugin.Plugin plugin;
+    // Write-behind: mutations mark the store dirty and a background flush rewrites the file
+    private final boolean writeBehind;
+    private final long flushDelayMillis;
+    private final int maxPendingOps;
+    private int pendingOps = 0;
+    private ScheduledExecutorService flushExecutor;
+    private ScheduledFuture<?> scheduledFlush;
+    // Number of previous users.json generations kept by snapshot writes
+    private final int snapshotGenerations;
 
     public FileUserDao(File dataFile, org.bukkit.plugin.Plugin plugin) {
         this.file = dataFile;
         this.plugin = plugin;
         this.debug = plugin.getConfig().getBoolean("debug", false);
+        this.writeBehind = plugin.getConfig().getBoolean("storage.data.write_behind.enabled", false);
+        this.flushDelayMillis = Math.max(0, plugin.getConfig().getLong("storage.data.write_behind.max_delay_ms", 2000));
+        this.maxPendingOps = Math.max(1, plugin.getConfig().getInt("storage.data.write_behind.max_pending_ops", 100));
+        this.snapshotGenerations = Math.max(0, plugin.getConfig().getInt("storage.data.backup_generations", 0));
         load();
     }
 
@@ -24,6 +49,10 @@ public class FileUserDao implements UserDao {
         this.file = dataFile;
         this.plugin = null;
         this.debug = false;
+        this.writeBehind = false;
+        this.flushDelayMillis = 0;
+        this.maxPendingOps = 1;
+        this.snapshotGenerations = 0;
         load();
     }
 
@@ -31,30 +60,65 @@ public class FileUserDao implements UserDao {
         if (debug && plugin != null) plugin.getLogger().info("[DEBUG] FileUserDao: " + msg);
     }
     
+    private static String indexKey(Object value) {
+        return value != null ? value.toString().toLowerCase(Locale.ROOT) : null;
+    }
+
+    private static void addToIndex(Map<String, Set<String>> index, Object value, String uuid) {
+        String key = indexKey(value);
+        if (key == null || uuid == null) return;
+        index.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(uuid);
+    }
+
+    private static void removeFromIndex(Map<String, Set<String>> index, Object value, String uuid) {
+        String key = indexKey(value);
+        if (key == null || uuid == null) return;
+        index.computeIfPresent(key, (k, uuids) -> {
+            uuids.remove(uuid);
+            return uuids.isEmpty() ? null : uuids;
+        });
+    }
+
     /**
-     * Safely convert regTime value to Long, handling both Long and Double types
-     * @param regTimeValue The regTime value from JSON
-     * @return Long value or null if conversion fails
+     * Add user to username, email, registration time and search indexes
+     * @param uuid User UUID
+     * @param user User record
      */
-    private Long getRegTimeAsLong(Object regTimeValue) {
-        if (regTimeValue == null) {
-            return null;
-        }
-        if (regTimeValue instanceof Long) {
-            return (Long) regTimeValue;
-        }
-        if (regTimeValue instanceof Double) {
-            return ((Double) regTimeValue).longValue();
-        }
-        if (regTimeValue instanceof Number) {
-            return ((Number) regTimeValue).longValue();
-        }
-        try {
-            return Long.parseLong(regTimeValue.toString());
-        } catch (NumberFormatException e) {
-            debugLog("Failed to convert regTime to Long: " + regTimeValue + ", error: " + e.getMessage());
-            return 0L;
+    private void indexUser(String uuid, UserRecord user) {
+        addToIndex(usernameIndex, user.getUsername(), uuid);
+        addToIndex(emailIndex, user.getEmail(), uuid);
+        regTimeIndex.add(uuid, user);
+        // Re-indexing unchanged username/email (status or password updates) is a no-op
+        searchIndex.put(uuid, user.getUsername(), user.getEmail());
+    }
+
+    /**
+     * Remove user from username, email and registration time indexes;
+     * the search index is updated by {@link #indexUser} or {@link #applyDelete}
+     * @param uuid User UUID
+     * @param user User record
+     */
+    private void unindexUser(String uuid, UserRecord user) {
+        removeFromIndex(usernameIndex, user.getUsername(), uuid);
+        removeFromIndex(emailIndex, user.getEmail(), uuid);
+        regTimeIndex.remove(uuid, user);
+    }
+
+    /**
+     * Resolve a UUID or username to the key of the stored user
+     * @param uuidOrName User UUID or username
+     * @return User UUID, or null if not found
+     */
+    private String resolveUuid(String uuidOrName) {
+        if (uuidOrName == null) return null;
+        if (users.containsKey(uuidOrName)) return uuidOrName;
+        Set<String> uuids = usernameIndex.get(indexKey(uuidOrName));
+        if (uuids != null) {
+            for (String uuid : uuids) {
+                if (users.containsKey(uuid)) return uuid;
+            }
         }
+        return null;
     }
 
     public synchronized void load() {
@@ -63,65 +127,171 @@ public class FileUserDao implements UserDao {
             debugLog("File does not exist, creating new user database");
             return;
         }
-        try (Reader reader = new FileReader(file)) {
-            Map<String, Map<String, Object>> loaded = gson.fromJson(reader, new TypeToken<Map<String, Map<String, Object>>>(){}.getType());
-            if (loaded != null) {
-                // Compatibility handling: Upgrade old version data format
-                boolean hasUpgraded = false;
-                for (Map.Entry<String, Map<String, Object>> entry : loaded.entrySet()) {
-                    Map<String, Object> user = entry.getValue();
-                    if (user != null) {
-                        // Check and add missing fields
-                        if (!user.containsKey("password")) {
-                            user.put("password", null);
-                            hasUpgraded = true;
-                            debugLog("Added missing password field for user: " + user.get("username"));
-                        }
-                        
-                        // Ensure all required fields exist
-                        if (!user.containsKey("uuid")) {
-                            user.put("uuid", entry.getKey());
-                            hasUpgraded = true;
-                            debugLog("Added missing uuid field for user: " + user.get("username"));
-                        }
-                        
-                        if (!user.containsKey("regTime")) {
-                            user.put("regTime", System.currentTimeMillis());
-                            hasUpgraded = true;
-                            debugLog("Added missing regTime field for user: " + user.get("username"));
-                        }
-                    }
-                }
-                
-                users.putAll(loaded);
-                debugLog("Loaded " + loaded.size() + " users from database");
-                
-                // If data upgrade occurred, save immediately
-                if (hasUpgraded) {
-                    debugLog("Data format upgraded, saving updated data");
-                    save();
-                }
-            } else {
+        // Stream records straight into the live map instead of materializing the whole file first
+        int loadedCount = 0;
+        boolean[] hasUpgraded = new boolean[1];
+        try (JsonReader reader = new JsonReader(new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)))) {
+            if (reader.peek() == JsonToken.END_DOCUMENT || reader.peek() == JsonToken.NULL) {
                 debugLog("No users found in database");
+                return;
+            }
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String uuid = reader.nextName();
+                if (reader.peek() == JsonToken.NULL) {
+                    reader.nextNull();
+                    continue;
+                }
+                // Compatibility handling: missing uuid/regTime fields of old version data are filled in while reading
+                applyPut(uuid, UserRecord.readJson(reader, uuid, hasUpgraded));
+                loadedCount++;
             }
+            reader.endObject();
+            debugLog("Loaded " + loadedCount + " users from database");
         } catch (Exception e) {
-            debugLog("Error loading users: " + e.getMessage());
+            debugLog("Error loading users after " + loadedCount + " records: " + e.getMessage());
+            return;
+        }
+        // If data upgrade occurred, save immediately
+        if (hasUpgraded[0]) {
+            debugLog("Data format upgraded, saving updated data");
+            save();
+        }
+    }
+
+    /**
+     * Apply a stored user record to the in-memory map and indexes
+     * @param uuid User UUID
+     * @param user User record
+     */
+    protected synchronized void applyPut(String uuid, UserRecord user) {
+        UserRecord previous = users.put(uuid, user);
+        if (previous != null) unindexUser(uuid, previous);
+        indexUser(uuid, user);
+    }
+
+    /**
+     * Remove a user from the in-memory map and indexes
+     * @param uuid User UUID
+     */
+    protected synchronized void applyDelete(String uuid) {
+        UserRecord removed = users.remove(uuid);
+        if (removed != null) {
+            unindexUser(uuid, removed);
+            searchIndex.remove(uuid);
+        }
+    }
+
+    /**
+     * Persist a mutation, either immediately or through the write-behind flush
+     * @param uuid UUID of the changed user
+     * @param user User record after the change, null if the user was deleted
+     */
+    protected synchronized void persist(String uuid, UserRecord user) {
+        persistAll(Collections.singletonMap(uuid, user));
+    }
+
+    /**
+     * Persist several mutations with a single write, either immediately or through the write-behind flush
+     * @param changes Changed users by UUID, null values for deleted users
+     */
+    protected synchronized void persistAll(Map<String, UserRecord> changes) {
+        if (changes.isEmpty()) return;
+        if (!writeBehind) {
+            save();
+            return;
+        }
+        pendingOps += changes.size();
+        if (pendingOps >= maxPendingOps) {
+            debugLog("Pending operations reached " + pendingOps + ", scheduling immediate flush");
+            scheduleFlush(0);
+        } else if (scheduledFlush == null) {
+            scheduleFlush(flushDelayMillis);
+        }
+    }
+
+    private void scheduleFlush(long delayMillis) {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+        }
+        if (flushExecutor == null) {
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, task -> {
+                Thread thread = new Thread(task, "VerifyMC-UserFlush");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+            flushExecutor = executor;
+        }
+        scheduledFlush = flushExecutor.schedule(this::flush, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Write pending changes to disk if there are any
+     */
+    public synchronized void flush() {
+        if (pendingOps > 0) {
+            debugLog("Flushing " + pendingOps + " pending operations");
+            save();
+        }
+    }
+
+    /**
+     * Flush pending changes and stop the background flush thread
+     */
+    @Override
+    public synchronized void close() {
+        flush();
+        if (flushExecutor != null) {
+            flushExecutor.shutdownNow();
+            flushExecutor = null;
         }
     }
 
     @Override
     public synchronized void save() {
+        pendingOps = 0;
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        writeSnapshot();
+    }
+
+    /**
+     * Atomically replace the data file with the whole user map
+     * @return true if the file was written successfully
+     */
+    protected synchronized boolean writeSnapshot() {
         debugLog("Saving " + users.size() + " users to: " + file.getAbsolutePath());
-        try (Writer writer = new FileWriter(file)) {
-            gson.toJson(users, writer);
+        try {
+            SnapshotWriter.write(file, snapshotGenerations, this::writeUsers);
             debugLog("Save successful");
+            return true;
         } catch (Exception e) {
             debugLog("Error saving users: " + e.getMessage());
+            return false;
         }
     }
 
+    /**
+     * Write all users as a JSON object keyed by UUID
+     * @param out Target writer
+     * @throws IOException if writing fails
+     */
+    private void writeUsers(Writer out) throws IOException {
+        JsonWriter writer = new JsonWriter(out);
+        writer.beginObject();
+        for (Map.Entry<String, UserRecord> entry : users.entrySet()) {
+            writer.name(entry.getKey());
+            entry.getValue().writeJson(writer);
+        }
+        writer.endObject();
+        writer.flush();
+    }
+
     @Override
-    public boolean registerUser(String uuid, String username, String email, String status) {
+    public synchronized boolean registerUser(String uuid, String username, String email, String status) {
         debugLog("registerUser called: uuid=" + uuid + ", username=" + username + ", email=" + email + ", status=" + status);
         try {
             // Check if user already exists
@@ -130,15 +300,10 @@ public class FileUserDao implements UserDao {
                 return false;
             }
             
-            Map<String, Object> user = new HashMap<>();
-            user.put("uuid", uuid);
-            user.put("username", username);
-            user.put("email", email);
-            user.put("status", status);
-            user.put("regTime", System.currentTimeMillis());
-            debugLog("Adding user to map: " + user);
-            users.put(uuid, user);
-            save();
+            UserRecord user = new UserRecord(uuid, username, email, status, null, System.currentTimeMillis());
+            debugLog("Adding user to map: " + username);
+            applyPut(uuid, user);
+            persist(uuid, user);
             debugLog("User registration successful");
             return true;
         } catch (Exception e) {
@@ -148,7 +313,7 @@ public class FileUserDao implements UserDao {
     }
 
     @Override
-    public boolean registerUser(String uuid, String username, String email, String status, String password) {
+    public synchronized boolean registerUser(String uuid, String username, String email, String status, String password) {
         debugLog("registerUser with password called: uuid=" + uuid + ", username=" + username + ", email=" + email + ", status=" + status);
         try {
             // Check if user already exists
@@ -157,16 +322,10 @@ public class FileUserDao implements UserDao {
                 return false;
             }
             
-            Map<String, Object> user = new HashMap<>();
-            user.put("uuid", uuid);
-            user.put("username", username);
-            user.put("email", email);
-            user.put("status", status);
-            user.put("password", password);
-            user.put("regTime", System.currentTimeMillis());
-            debugLog("Adding user with password to map: " + user);
-            users.put(uuid, user);
-            save();
+            UserRecord user = new UserRecord(uuid, username, email, status, password, System.currentTimeMillis());
+            debugLog("Adding user with password to map: " + username);
+            applyPut(uuid, user);
+            persist(uuid, user);
             debugLog("User registration with password successful");
             return true;
         } catch (Exception e) {
@@ -178,72 +337,87 @@ public class FileUserDao implements UserDao {
     @Override
     public List<Map<String, Object>> getAllUsers() {
         debugLog("Getting all users, total: " + users.size());
-        return new ArrayList<>(users.values());
+        List<Map<String, Object>> result = new ArrayList<>(users.size());
+        for (UserRecord user : users.values()) result.add(user.toMap());
+        return result;
     }
 
     @Override
-    public boolean updateUserStatus(String uuid, String status) {
-        debugLog("updateUserStatus called: uuid=" + uuid + ", status=" + status);
-        Map<String, Object> user = users.get(uuid);
+    public synchronized boolean updateUserStatus(String uuidOrName, String status) {
+        debugLog("updateUserStatus called: uuidOrName=" + uuidOrName + ", status=" + status);
+        String uuid = resolveUuid(uuidOrName);
+        UserRecord user = uuid != null ? users.get(uuid) : null;
         if (user == null) {
-            debugLog("User not found: " + uuid);
+            debugLog("User not found: " + uuidOrName);
             return false;
         }
-        String oldStatus = (String) user.get("status");
-        user.put("status", status);
-        save();
-        debugLog("User status updated: " + uuid + " from " + oldStatus + " to " + status);
+        UserRecord updated = user.withStatus(status);
+        applyPut(uuid, updated);
+        persist(uuid, updated);
+        debugLog("User status updated: " + uuidOrName + " from " + user.getStatusValue() + " to " + status);
         return true;
     }
 
     @Override
-    public boolean updateUserPassword(String uuidOrName, String password) {
-        debugLog("updateUserPassword called: uuidOrName=" + uuidOrName);
-        Map<String, Object> user = null;
-        
-        // First try to find as UUID
-        user = users.get(uuidOrName);
-        
-        // If not found, try to find as username
-        if (user == null) {
-            for (Map<String, Object> u : users.values()) {
-                if (u.get("username") != null && u.get("username").toString().equalsIgnoreCase(uuidOrName)) {
-                    user = u;
-                    break;
-                }
-            }
+    public synchronized List<Map<String, Object>> updateUserStatuses(Collection<String> uuids, String status) {
+        debugLog("updateUserStatuses called: " + uuids.size() + " users, status=" + status);
+        Map<String, UserRecord> changes = new LinkedHashMap<>();
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (String uuid : uuids) {
+            UserRecord user = uuid != null ? users.get(uuid) : null;
+            if (user == null || changes.containsKey(uuid)) continue;
+            UserRecord updated = user.withStatus(status);
+            applyPut(uuid, updated);
+            changes.put(uuid, updated);
+            result.add(updated.toMap());
         }
+        persistAll(changes);
+        debugLog("Updated status of " + result.size() + " users to " + status);
+        return result;
+    }
+
+    @Override
+    public synchronized boolean updateUserPassword(String uuidOrName, String password) {
+        debugLog("updateUserPassword called: uuidOrName=" + uuidOrName);
+        // Find as UUID first, then as username through the index
+        String uuid = resolveUuid(uuidOrName);
+        UserRecord user = uuid != null ? users.get(uuid) : null;
         
         if (user == null) {
             debugLog("User not found: " + uuidOrName);
             return false;
         }
         
-        user.put("password", password);
-        save();
-        debugLog("User password updated: " + user.get("username"));
+        UserRecord updated = user.withPassword(password);
+        applyPut(uuid, updated);
+        persist(uuid, updated);
+        debugLog("User password updated: " + user.getUsername());
         return true;
     }
 
     @Override
     public Map<String, Object> getUserByUuid(String uuid) {
         debugLog("Getting user by UUID: " + uuid);
-        Map<String, Object> user = users.get(uuid);
+        UserRecord user = uuid != null ? users.get(uuid) : null;
         if (user != null) {
-            debugLog("User found: " + user.get("username"));
-        } else {
-            debugLog("User not found");
+            debugLog("User found: " + user.getUsername());
+            return user.toMap();
         }
-        return user;
+        debugLog("User not found");
+        return null;
     }
 
     @Override
     public Map<String, Object> getUserByUsername(String username) {
         debugLog("Getting user by username: " + username);
-        for (Map<String, Object> user : users.values()) {
-            if (user.get("username") != null && user.get("username").toString().equalsIgnoreCase(username)) {
-                debugLog("User found: " + user.get("uuid"));
-                return user;
+        Set<String> uuids = username != null ? usernameIndex.get(indexKey(username)) : null;
+        if (uuids != null) {
+            for (String uuid : uuids) {
+                UserRecord user = users.get(uuid);
+                if (user != null) {
+                    debugLog("User found: " + user.getUuid());
+                    return user.toMap();
+                }
             }
         }
         debugLog("User not found");
@@ -251,13 +425,15 @@ public class FileUserDao implements UserDao {
     }
 
     @Override
-    public boolean deleteUser(String uuid) {
-        debugLog("deleteUser called: uuid=" + uuid);
+    public synchronized boolean deleteUser(String uuidOrName) {
+        debugLog("deleteUser called: uuidOrName=" + uuidOrName);
         try {
-            Map<String, Object> removed = users.remove(uuid);
+            String uuid = resolveUuid(uuidOrName);
+            UserRecord removed = uuid != null ? users.get(uuid) : null;
             if (removed != null) {
-                debugLog("User deleted: " + removed.get("username"));
-                save();
+                applyDelete(uuid);
+                debugLog("User deleted: " + removed.getUsername());
+                persist(uuid, null);
                 return true;
             } else {
                 debugLog("User not found for deletion");
@@ -272,12 +448,8 @@ public class FileUserDao implements UserDao {
     @Override
     public int countUsersByEmail(String email) {
         debugLog("Counting users by email: " + email);
-        int count = 0;
-        for (Map<String, Object> user : users.values()) {
-            if (user.get("email") != null && user.get("email").toString().equalsIgnoreCase(email)) {
-                count++;
-            }
-        }
+        Set<String> uuids = email != null ? emailIndex.get(indexKey(email)) : null;
+        int count = uuids != null ? uuids.size() : 0;
         debugLog("Found " + count + " users with email: " + email);
         return count;
     }
@@ -285,37 +457,126 @@ public class FileUserDao implements UserDao {
     @Override
     public List<Map<String, Object>> getPendingUsers() {
         debugLog("Getting pending users");
+        List<Map<String, Object>> result = new ArrayList<>(regTimeIndex.pendingCount());
+        for (UserRecord user : regTimeIndex.pending()) result.add(user.toMap());
+        debugLog("Found " + result.size() + " pending users");
+        return result;
+    }
+
+    /**
+     * Check whether a user matches an admin search query
+     * @param user User record
+     * @param query Lower-cased, trimmed query; empty matches everything
+     * @return true if username or email contains the query
+     */
+    private static boolean matchesSearch(UserRecord user, String query) {
+        if (query.isEmpty()) return true;
+        String username = user.getUsername() != null ? user.getUsername().toLowerCase(Locale.ROOT) : "";
+        String email = user.getEmail() != null ? user.getEmail().toLowerCase(Locale.ROOT) : "";
+        return username.contains(query) || email.contains(query);
+    }
+
+    private static String normalizeQuery(String searchQuery) {
+        return searchQuery != null ? searchQuery.toLowerCase(Locale.ROOT).trim() : "";
+    }
+
+    /**
+     * Read one page from an index view that is already ordered newest first
+     * @param ordered Index view
+     * @param query Normalized search query, empty for no filter
+     * @param page Page number (1-based)
+     * @param pageSize Page size
+     * @return Page content, empty if out of range
+     */
+    private List<Map<String, Object>> readPage(Collection<UserRecord> ordered, String query, int page, int pageSize) {
         List<Map<String, Object>> result = new ArrayList<>();
-        for (Map<String, Object> user : users.values()) {
-            if ("pending".equals(user.get("status"))) result.add(user);
+        long skip = (long) (page - 1) * pageSize;
+        if (skip < 0 || pageSize <= 0) return result;
+        for (UserRecord user : ordered) {
+            if (!matchesSearch(user, query)) continue;
+            if (skip > 0) {
+                skip--;
+                continue;
+            }
+            result.add(user.toMap());
+            if (result.size() >= pageSize) break;
         }
-        debugLog("Found " + result.size() + " pending users");
+        return result;
+    }
+
+    /**
+     * Find all users matching a non-empty search query, in no particular order.
+     * Queries of at least three characters are answered from the trigram index;
+     * shorter ones fall back to a scan.
+     * @param query Normalized, non-empty search query
+     * @param approvedOnly true to skip pending users
+     * @return Matching users
+     */
+    private List<UserRecord> findMatches(String query, boolean approvedOnly) {
+        List<UserRecord> matches = new ArrayList<>();
+        if (query.length() >= TrigramIndex.GRAM) {
+            for (String uuid : searchIndex.candidates(query)) {
+                UserRecord user = users.get(uuid);
+                // Trigram hits are only candidates, the substring check confirms them
+                if (user != null && (!approvedOnly || user.getStatus() != UserStatus.PENDING) && matchesSearch(user, query)) {
+                    matches.add(user);
+                }
+            }
+        } else {
+            for (UserRecord user : approvedOnly ? regTimeIndex.approved() : regTimeIndex.all()) {
+                if (matchesSearch(user, query)) matches.add(user);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Relevance of a search hit, lower is better: exact username, username prefix, email prefix, substring
+     * @param username Username of the hit
+     * @param email Email of the hit
+     * @param query Normalized search query
+     * @return Rank from 0 to 3
+     */
+    private static int searchRank(String username, String email, String query) {
+        String name = username != null ? username.toLowerCase(Locale.ROOT) : "";
+        if (name.equals(query)) return 0;
+        if (name.startsWith(query)) return 1;
+        if (email != null && email.toLowerCase(Locale.ROOT).startsWith(query)) return 2;
+        return 3;
+    }
+
+    /**
+     * Sort search hits by rank, then newest first
+     * @param matches Matching users, sorted in place
+     * @param query Normalized search query
+     * @return The sorted list
+     */
+    private static List<UserRecord> rank(List<UserRecord> matches, String query) {
+        matches.sort(Comparator.comparingInt((UserRecord user) -> searchRank(user.getUsername(), user.getEmail(), query))
+                .thenComparing(user -> new RegTimeIndex.Key(user.getRegTime(), user.getUuid())));
+        return matches;
+    }
+
+    /**
+     * Cut one page out of a sorted list
+     * @param sorted Sorted users
+     * @param page Page number (1-based)
+     * @param pageSize Page size
+     * @return Page content, empty if out of range
+     */
+    private static List<Map<String, Object>> slice(List<UserRecord> sorted, int page, int pageSize) {
+        List<Map<String, Object>> result = new ArrayList<>();
+        long from = (long) (page - 1) * pageSize;
+        if (from < 0 || pageSize <= 0 || from >= sorted.size()) return result;
+        int to = (int) Math.min(sorted.size(), from + pageSize);
+        for (UserRecord user : sorted.subList((int) from, to)) result.add(user.toMap());
         return result;
     }
     
     @Override
     public List<Map<String, Object>> getUsersWithPagination(int page, int pageSize) {
         debugLog("Getting users with pagination: page=" + page + ", pageSize=" + pageSize);
-        List<Map<String, Object>> allUsers = new ArrayList<>(users.values());
-        
-        // Sort by registration time (newest first)
-        allUsers.sort((a, b) -> {
-            Long timeA = getRegTimeAsLong(a.get("regTime"));
-            Long timeB = getRegTimeAsLong(b.get("regTime"));
-            if (timeA == null) timeA = 0L;
-            if (timeB == null) timeB = 0L;
-            return timeB.compareTo(timeA);
-        });
-        
-        int startIndex = (page - 1) * pageSize;
-        int endIndex = Math.min(startIndex + pageSize, allUsers.size());
-        
-        if (startIndex >= allUsers.size()) {
-            debugLog("Page " + page + " is out of range, returning empty list");
-            return new ArrayList<>();
-        }
-        
-        List<Map<String, Object>> result = allUsers.subList(startIndex, endIndex);
+        List<Map<String, Object>> result = readPage(regTimeIndex.all(), "", page, pageSize);
         debugLog("Returning " + result.size() + " users for page " + page);
         return result;
     }
@@ -330,40 +591,10 @@ public class FileUserDao implements UserDao {
     @Override
     public List<Map<String, Object>> getUsersWithPaginationAndSearch(int page, int pageSize, String searchQuery) {
         debugLog("Getting users with pagination and search: page=" + page + ", pageSize=" + pageSize + ", query=" + searchQuery);
-        List<Map<String, Object>> filteredUsers = new ArrayList<>();
-        
-        // Filter users based on search query
-        String query = searchQuery != null ? searchQuery.toLowerCase().trim() : "";
-        for (Map<String, Object> user : users.values()) {
-            if (query.isEmpty()) {
-                filteredUsers.add(user);
-            } else {
-                String username = user.get("username") != null ? user.get("username").toString().toLowerCase() : "";
-                String email = user.get("email") != null ? user.get("email").toString().toLowerCase() : "";
-                if (username.contains(query) || email.contains(query)) {
-                    filteredUsers.add(user);
-                }
-            }
-        }
-        
-        // Sort by registration time (newest first)
-        filteredUsers.sort((a, b) -> {
-            Long timeA = getRegTimeAsLong(a.get("regTime"));
-            Long timeB = getRegTimeAsLong(b.get("regTime"));
-            if (timeA == null) timeA = 0L;
-            if (timeB == null) timeB = 0L;
-            return timeB.compareTo(timeA);
-        });
-        
-        int startIndex = (page - 1) * pageSize;
-        int endIndex = Math.min(startIndex + pageSize, filteredUsers.size());
-        
-        if (startIndex >= filteredUsers.size()) {
-            debugLog("Page " + page + " is out of range for search results, returning empty list");
-            return new ArrayList<>();
-        }
-        
-        List<Map<String, Object>> result = filteredUsers.subList(startIndex, endIndex);
+        String query = normalizeQuery(searchQuery);
+        List<Map<String, Object>> result = query.isEmpty()
+                ? readPage(regTimeIndex.all(), "", page, pageSize)
+                : slice(rank(findMatches(query, false), query), page, pageSize);
         debugLog("Returning " + result.size() + " users for page " + page + " with search query: " + searchQuery);
         return result;
     }
@@ -371,60 +602,24 @@ public class FileUserDao implements UserDao {
     @Override
     public int getTotalUserCountWithSearch(String searchQuery) {
         debugLog("Getting total user count with search: query=" + searchQuery);
-        int count = 0;
-        String query = searchQuery != null ? searchQuery.toLowerCase().trim() : "";
-        
-        for (Map<String, Object> user : users.values()) {
-            if (query.isEmpty()) {
-                count++;
-            } else {
-                String username = user.get("username") != null ? user.get("username").toString().toLowerCase() : "";
-                String email = user.get("email") != null ? user.get("email").toString().toLowerCase() : "";
-                if (username.contains(query) || email.contains(query)) {
-                    count++;
-                }
-            }
-        }
-        
+        String query = normalizeQuery(searchQuery);
+        int count = query.isEmpty() ? users.size() : findMatches(query, false).size();
         debugLog("Total user count with search '" + searchQuery + "': " + count);
         return count;
     }
     
     @Override
     public int getApprovedUserCount() {
-        debugLog("Getting approved user count (excluding pending)");
-        int count = 0;
-        for (Map<String, Object> user : users.values()) {
-            String status = user.get("status") != null ? user.get("status").toString() : "";
-            if (!"pending".equalsIgnoreCase(status)) {
-                count++;
-            }
-        }
-        debugLog("Approved user count: " + count);
+        int count = regTimeIndex.approvedCount();
+        debugLog("Approved user count (excluding pending): " + count);
         return count;
     }
     
     @Override
     public int getApprovedUserCountWithSearch(String searchQuery) {
         debugLog("Getting approved user count with search: query=" + searchQuery);
-        int count = 0;
-        String query = searchQuery != null ? searchQuery.toLowerCase().trim() : "";
-        
-        for (Map<String, Object> user : users.values()) {
-            String status = user.get("status") != null ? user.get("status").toString() : "";
-            if (!"pending".equalsIgnoreCase(status)) {
-                if (query.isEmpty()) {
-                    count++;
-                } else {
-                    String username = user.get("username") != null ? user.get("username").toString().toLowerCase() : "";
-                    String email = user.get("email") != null ? user.get("email").toString().toLowerCase() : "";
-                    if (username.contains(query) || email.contains(query)) {
-                        count++;
-                    }
-                }
-            }
-        }
-        
+        String query = normalizeQuery(searchQuery);
+        int count = query.isEmpty() ? regTimeIndex.approvedCount() : findMatches(query, true).size();
         debugLog("Approved user count with search '" + searchQuery + "': " + count);
         return count;
     }
@@ -432,34 +627,7 @@ public class FileUserDao implements UserDao {
     @Override
     public List<Map<String, Object>> getApprovedUsersWithPagination(int page, int pageSize) {
         debugLog("Getting approved users with pagination: page=" + page + ", pageSize=" + pageSize);
-        List<Map<String, Object>> approvedUsers = new ArrayList<>();
-        
-        // Filter out pending users
-        for (Map<String, Object> user : users.values()) {
-            String status = user.get("status") != null ? user.get("status").toString() : "";
-            if (!"pending".equalsIgnoreCase(status)) {
-                approvedUsers.add(user);
-            }
-        }
-        
-        // Sort by registration time (newest first)
-        approvedUsers.sort((a, b) -> {
-            Long timeA = getRegTimeAsLong(a.get("regTime"));
-            Long timeB = getRegTimeAsLong(b.get("regTime"));
-            if (timeA == null) timeA = 0L;
-            if (timeB == null) timeB = 0L;
-            return timeB.compareTo(timeA);
-        });
-        
-        int startIndex = (page - 1) * pageSize;
-        int endIndex = Math.min(startIndex + pageSize, approvedUsers.size());
-        
-        if (startIndex >= approvedUsers.size()) {
-            debugLog("Page " + page + " is out of range for approved users, returning empty list");
-            return new ArrayList<>();
-        }
-        
-        List<Map<String, Object>> result = approvedUsers.subList(startIndex, endIndex);
+        List<Map<String, Object>> result = readPage(regTimeIndex.approved(), "", page, pageSize);
         debugLog("Returning " + result.size() + " approved users for page " + page);
         return result;
     }
@@ -467,44 +635,70 @@ public class FileUserDao implements UserDao {
     @Override
     public List<Map<String, Object>> getApprovedUsersWithPaginationAndSearch(int page, int pageSize, String searchQuery) {
         debugLog("Getting approved users with pagination and search: page=" + page + ", pageSize=" + pageSize + ", query=" + searchQuery);
-        List<Map<String, Object>> filteredUsers = new ArrayList<>();
-        
-        // Filter users based on search query and exclude pending users
-        String query = searchQuery != null ? searchQuery.toLowerCase().trim() : "";
-        for (Map<String, Object> user : users.values()) {
-            String status = user.get("status") != null ? user.get("status").toString() : "";
-            if (!"pending".equalsIgnoreCase(status)) {
-                if (query.isEmpty()) {
-                    filteredUsers.add(user);
-                } else {
-                    String username = user.get("username") != null ? user.get("username").toString().toLowerCase() : "";
-                    String email = user.get("email") != null ? user.get("email").toString().toLowerCase() : "";
-                    if (username.contains(query) || email.contains(query)) {
-                        filteredUsers.add(user);
-                    }
-                }
-            }
+        String query = normalizeQuery(searchQuery);
+        List<Map<String, Object>> result = query.isEmpty()
+                ? readPage(regTimeIndex.approved(), "", page, pageSize)
+                : slice(rank(findMatches(query, true), query), page, pageSize);
+        debugLog("Returning " + result.size() + " approved users for page " + page + " with search query: " + searchQuery);
+        return result;
+    }
+    
+    @Override
+    public List<Map<String, Object>> getApprovedUsersAfter(UserCursor after, int pageSize, String searchQuery) {
+        debugLog("Getting approved users after cursor: pageSize=" + pageSize + ", query=" + searchQuery);
+        String query = normalizeQuery(searchQuery);
+        List<Map<String, Object>> result;
+        if (query.isEmpty()) {
+            result = readPage(after != null ? regTimeIndex.approvedAfter(after) : regTimeIndex.approved(), "", 1, pageSize);
+        } else {
+            // Keyset pages stay in newest-first order so the cursor remains meaningful
+            result = slice(afterCursor(findMatches(query, true), after), 1, pageSize);
         }
-        
-        // Sort by registration time (newest first)
-        filteredUsers.sort((a, b) -> {
-            Long timeA = getRegTimeAsLong(a.get("regTime"));
-            Long timeB = getRegTimeAsLong(b.get("regTime"));
-            if (timeA == null) timeA = 0L;
-            if (timeB == null) timeB = 0L;
-            return timeB.compareTo(timeA);
-        });
-        
-        int startIndex = (page - 1) * pageSize;
-        int endIndex = Math.min(startIndex + pageSize, filteredUsers.size());
-        
-        if (startIndex >= filteredUsers.size()) {
-            debugLog("Page " + page + " is out of range for approved users search results, returning empty list");
-            return new ArrayList<>();
+        debugLog("Returning " + result.size() + " approved users after cursor");
+        return result;
+    }
+    
+    @Override
+    public UserPage getApprovedUsersPage(int page, int pageSize, String searchQuery, UserCursor after) {
+        debugLog("Getting approved users page with count: page=" + page + ", pageSize=" + pageSize + ", query=" + searchQuery + ", cursor=" + (after != null));
+        String query = normalizeQuery(searchQuery);
+        if (query.isEmpty()) {
+            // Count is maintained by the index, only the page itself has to be read
+            List<Map<String, Object>> users = after != null
+                    ? readPage(regTimeIndex.approvedAfter(after), "", 1, pageSize)
+                    : readPage(regTimeIndex.approved(), "", page, pageSize);
+            return new UserPage(users, regTimeIndex.approvedCount());
         }
-        
-        List<Map<String, Object>> result = filteredUsers.subList(startIndex, endIndex);
-        debugLog("Returning " + result.size() + " approved users for page " + page + " with search query: " + searchQuery);
+        List<UserRecord> matches = findMatches(query, true);
+        int count = matches.size();
+        List<Map<String, Object>> users = after != null
+                ? slice(afterCursor(matches, after), 1, pageSize)
+                : slice(rank(matches, query), page, pageSize);
+        debugLog("Returning " + users.size() + " of " + count + " approved users matching: " + searchQuery);
+        return new UserPage(users, count);
+    }
+
+    /**
+     * Keep the users after a cursor, newest first
+     * @param matches Users to filter
+     * @param after Cursor, null keeps all users
+     * @return Filtered and sorted users
+     */
+    private static List<UserRecord> afterCursor(List<UserRecord> matches, UserCursor after) {
+        List<UserRecord> result = new ArrayList<>(matches.size());
+        for (UserRecord user : matches) {
+            if (after == null || isAfter(user, after)) result.add(user);
+        }
+        result.sort(Comparator.comparing(user -> new RegTimeIndex.Key(user.getRegTime(), user.getUuid())));
         return result;
     }
-} 
\ No newline at end of file
+
+    /**
+     * Check whether a user comes after a cursor in newest-first order
+     */
+    private static boolean isAfter(UserRecord user, UserCursor cursor) {
+        if (user.getRegTime() != cursor.getRegTime()) return user.getRegTime() < cursor.getRegTime();
+        String uuid = user.getUuid() != null ? user.getUuid() : "";
+        return uuid.compareTo(cursor.getUuid()) < 0;
+    }
+}
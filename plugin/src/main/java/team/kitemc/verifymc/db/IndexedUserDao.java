@@ -0,0 +1,191 @@
+package team.kitemc.verifymc.db;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import org.bukkit.plugin.Plugin;
+
+/**
+ * UserDao wrapper that keeps a {@link UserStatusIndex} in sync with every mutation,
+ * so the login listener can check a player's status without querying storage.
+ */
+public class IndexedUserDao implements UserDao {
+    private final UserDao delegate;
+    private final UserStatusIndex index = new UserStatusIndex();
+    private final boolean fallbackToStorage;
+    private final boolean debug;
+    private final Plugin plugin;
+
+    public IndexedUserDao(UserDao delegate, Plugin plugin) {
+        this.delegate = delegate;
+        this.plugin = plugin;
+        this.debug = plugin.getConfig().getBoolean("debug", false);
+        this.fallbackToStorage = plugin.getConfig().getBoolean("login_cache.fallback_to_storage", true);
+        rebuildIndex();
+    }
+
+    private void debugLog(String msg) {
+        if (debug) plugin.getLogger().info("[DEBUG] IndexedUserDao: " + msg);
+    }
+
+    /**
+     * Get the wrapped storage implementation
+     * @return Underlying user data access object
+     */
+    public UserDao getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Reload the status index from storage
+     */
+    public void rebuildIndex() {
+        index.rebuild(delegate::getAllUsers);
+        debugLog("Status index rebuilt with " + index.size() + " users");
+    }
+
+    /**
+     * Check if a player is approved, consulting storage on index miss when configured
+     * @param username Username (case-insensitive)
+     * @return true if the user is approved
+     */
+    public boolean isApproved(String username) {
+        String status = index.getStatus(username);
+        if (status == null && fallbackToStorage && !index.contains(username)) {
+            debugLog("Status index miss for " + username + ", falling back to storage");
+            Map<String, Object> user = delegate.getUserByUsername(username);
+            if (user != null) {
+                status = user.get("status") != null ? user.get("status").toString() : null;
+                index.put((String) user.get("uuid"), (String) user.get("username"), status);
+            }
+        }
+        return "approved".equals(status);
+    }
+
+    @Override
+    public boolean registerUser(String uuid, String username, String email, String status) {
+        boolean ok = delegate.registerUser(uuid, username, email, status);
+        if (ok) index.put(uuid, username, status);
+        return ok;
+    }
+
+    @Override
+    public boolean registerUser(String uuid, String username, String email, String status, String password) {
+        boolean ok = delegate.registerUser(uuid, username, email, status, password);
+        if (ok) index.put(uuid, username, status);
+        return ok;
+    }
+
+    @Override
+    public boolean updateUserStatus(String uuidOrName, String status) {
+        boolean ok = delegate.updateUserStatus(uuidOrName, status);
+        if (ok) index.updateStatus(uuidOrName, status);
+        return ok;
+    }
+
+    @Override
+    public List<Map<String, Object>> updateUserStatuses(Collection<String> uuids, String status) {
+        List<Map<String, Object>> updated = delegate.updateUserStatuses(uuids, status);
+        for (Map<String, Object> user : updated) {
+            index.updateStatus((String) user.get("uuid"), status);
+        }
+        return updated;
+    }
+
+    @Override
+    public boolean updateUserPassword(String uuidOrName, String password) {
+        return delegate.updateUserPassword(uuidOrName, password);
+    }
+
+    @Override
+    public List<Map<String, Object>> getAllUsers() {
+        return delegate.getAllUsers();
+    }
+
+    @Override
+    public List<Map<String, Object>> getUsersWithPagination(int page, int pageSize) {
+        return delegate.getUsersWithPagination(page, pageSize);
+    }
+
+    @Override
+    public int getTotalUserCount() {
+        return delegate.getTotalUserCount();
+    }
+
+    @Override
+    public List<Map<String, Object>> getUsersWithPaginationAndSearch(int page, int pageSize, String searchQuery) {
+        return delegate.getUsersWithPaginationAndSearch(page, pageSize, searchQuery);
+    }
+
+    @Override
+    public int getTotalUserCountWithSearch(String searchQuery) {
+        return delegate.getTotalUserCountWithSearch(searchQuery);
+    }
+
+    @Override
+    public int getApprovedUserCount() {
+        return delegate.getApprovedUserCount();
+    }
+
+    @Override
+    public int getApprovedUserCountWithSearch(String searchQuery) {
+        return delegate.getApprovedUserCountWithSearch(searchQuery);
+    }
+
+    @Override
+    public List<Map<String, Object>> getApprovedUsersWithPagination(int page, int pageSize) {
+        return delegate.getApprovedUsersWithPagination(page, pageSize);
+    }
+
+    @Override
+    public List<Map<String, Object>> getApprovedUsersWithPaginationAndSearch(int page, int pageSize, String searchQuery) {
+        return delegate.getApprovedUsersWithPaginationAndSearch(page, pageSize, searchQuery);
+    }
+
+    @Override
+    public List<Map<String, Object>> getApprovedUsersAfter(UserCursor after, int pageSize, String searchQuery) {
+        return delegate.getApprovedUsersAfter(after, pageSize, searchQuery);
+    }
+
+    @Override
+    public UserPage getApprovedUsersPage(int page, int pageSize, String searchQuery, UserCursor after) {
+        return delegate.getApprovedUsersPage(page, pageSize, searchQuery, after);
+    }
+
+    @Override
+    public Map<String, Object> getUserByUuid(String uuid) {
+        return delegate.getUserByUuid(uuid);
+    }
+
+    @Override
+    public Map<String, Object> getUserByUsername(String username) {
+        return delegate.getUserByUsername(username);
+    }
+
+    @Override
+    public boolean deleteUser(String uuidOrName) {
+        boolean ok = delegate.deleteUser(uuidOrName);
+        if (ok) index.remove(uuidOrName);
+        return ok;
+    }
+
+    @Override
+    public void save() {
+        delegate.save();
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    @Override
+    public int countUsersByEmail(String email) {
+        return delegate.countUsersByEmail(email);
+    }
+
+    @Override
+    public List<Map<String, Object>> getPendingUsers() {
+        return delegate.getPendingUsers();
+    }
+}
@@ -0,0 +1,260 @@
+package team.kitemc.verifymc.db;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import org.bukkit.plugin.Plugin;
+
+/**
+ * File storage that appends every mutation to a journal instead of rewriting users.json.
+ * On startup the users.json snapshot is loaded and the journal is replayed on top of it;
+ * the journal is compacted into a new snapshot once it grows past the configured threshold.
+ *
+ * Journal format: one JSON record per line, a record is committed once its newline is written.
+ * {"op":"put","uuid":"...","user":{...}} stores the full user, {"op":"del","uuid":"..."} deletes it.
+ */
+public class JournalUserDao extends FileUserDao {
+    private final File journalFile;
+    private final Plugin plugin;
+    private final boolean debug;
+    private final boolean fsync;
+    private final int compactThreshold;
+    private FileOutputStream journalStream;
+    private int journalRecords = 0;
+    // Changes whose journal append failed and that are not in a snapshot yet
+    private final Map<String, UserRecord> pending = new LinkedHashMap<>();
+
+    public JournalUserDao(File snapshotFile, File journalFile, Plugin plugin) {
+        // Loads the snapshot; save() during the legacy upgrade only writes the snapshot as the journal is not open yet
+        super(snapshotFile, plugin);
+        this.journalFile = journalFile;
+        this.plugin = plugin;
+        this.debug = plugin.getConfig().getBoolean("debug", false);
+        this.fsync = plugin.getConfig().getBoolean("storage.journal.fsync", true);
+        this.compactThreshold = Math.max(1, plugin.getConfig().getInt("storage.journal.compact_threshold", 1000));
+        replayJournal();
+        openJournal();
+        if (journalRecords >= compactThreshold) {
+            compact();
+        }
+    }
+
+    private void debugLog(String msg) {
+        if (debug) plugin.getLogger().info("[DEBUG] JournalUserDao: " + msg);
+    }
+
+    /**
+     * Replay committed journal records on top of the loaded snapshot.
+     * An incomplete trailing record (crash during append) is discarded and cut from the file.
+     * A newline-terminated record that cannot be applied is skipped and reported, the records after it still apply;
+     * the journal is then kept as a .corrupt copy because the next compaction replaces it.
+     */
+    private synchronized void replayJournal() {
+        if (!journalFile.exists()) {
+            debugLog("Journal does not exist, starting with snapshot only");
+            return;
+        }
+        try {
+            byte[] data = Files.readAllBytes(journalFile.toPath());
+            int start = 0;
+            int lineNumber = 0;
+            int skipped = 0;
+            while (start < data.length) {
+                int end = start;
+                while (end < data.length && data[end] != '\n') end++;
+                if (end >= data.length) {
+                    // No terminating newline: the last append did not complete
+                    break;
+                }
+                lineNumber++;
+                String line = new String(data, start, end - start, StandardCharsets.UTF_8).trim();
+                if (!line.isEmpty()) {
+                    if (applyRecord(line)) {
+                        journalRecords++;
+                    } else {
+                        skipped++;
+                        plugin.getLogger().severe("[VerifyMC] Skipping unreadable record at line " + lineNumber + " of " + journalFile.getName());
+                    }
+                }
+                start = end + 1;
+            }
+            if (skipped > 0) {
+                File copy = new File(journalFile.getParentFile(), journalFile.getName() + ".corrupt");
+                Files.copy(journalFile.toPath(), copy.toPath(), java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+                plugin.getLogger().severe("[VerifyMC] Skipped " + skipped + " unreadable journal records, original journal kept as " + copy.getName());
+            }
+            if (start < data.length) {
+                plugin.getLogger().warning("[VerifyMC] Discarding " + (data.length - start) + " bytes of incomplete trailing journal record in " + journalFile.getName());
+                try (FileChannel channel = FileChannel.open(journalFile.toPath(), StandardOpenOption.WRITE)) {
+                    channel.truncate(start);
+                }
+            }
+            debugLog("Replayed " + journalRecords + " journal records");
+        } catch (IOException e) {
+            plugin.getLogger().warning("[VerifyMC] Failed to replay user journal: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Apply one journal record
+     * @param line Record JSON
+     * @return true if the record was valid
+     */
+    private boolean applyRecord(String line) {
+        try (JsonReader reader = new JsonReader(new StringReader(line))) {
+            String op = null;
+            String uuid = null;
+            UserRecord user = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "op": op = reader.nextString(); break;
+                    case "uuid": uuid = reader.nextString(); break;
+                    case "user": user = UserRecord.readJson(reader, uuid, new boolean[1]); break;
+                    default: reader.skipValue(); break;
+                }
+            }
+            reader.endObject();
+            if (uuid == null) return false;
+            if ("put".equals(op) && user != null) {
+                applyPut(uuid, user);
+                return true;
+            }
+            if ("del".equals(op)) {
+                applyDelete(uuid);
+                return true;
+            }
+            return false;
+        } catch (Exception e) {
+            debugLog("Invalid journal record: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void openJournal() {
+        try {
+            journalStream = new FileOutputStream(journalFile, true);
+        } catch (IOException e) {
+            plugin.getLogger().warning("[VerifyMC] Failed to open user journal, falling back to snapshot writes: " + e.getMessage());
+            journalStream = null;
+        }
+    }
+
+    private void closeJournal() {
+        if (journalStream == null) return;
+        try {
+            journalStream.close();
+        } catch (IOException e) {
+            debugLog("Error closing journal: " + e.getMessage());
+        }
+        journalStream = null;
+    }
+
+    /**
+     * Append a batch of changes to the journal.
+     * If the append fails the journal is cut back to where the batch started (or closed if that fails too,
+     * leaving snapshot writes until a compaction succeeds); the changes stay pending and are written again
+     * with the next batch, or by the next successful snapshot.
+     */
+    @Override
+    protected synchronized void persistAll(Map<String, UserRecord> changes) {
+        if (changes.isEmpty() && pending.isEmpty()) return;
+        pending.putAll(changes);
+        if (journalStream == null) {
+            compact();
+            return;
+        }
+        long batchStart = -1;
+        try {
+            // All records of a batch share one write (and fsync)
+            ByteArrayOutputStream batch = new ByteArrayOutputStream();
+            for (Map.Entry<String, UserRecord> change : pending.entrySet()) {
+                StringWriter line = new StringWriter();
+                JsonWriter record = new JsonWriter(line);
+                record.beginObject();
+                record.name("op").value(change.getValue() != null ? "put" : "del");
+                record.name("uuid").value(change.getKey());
+                if (change.getValue() != null) {
+                    record.name("user");
+                    change.getValue().writeJson(record);
+                }
+                record.endObject();
+                record.flush();
+                line.write('\n');
+                batch.write(line.toString().getBytes(StandardCharsets.UTF_8));
+            }
+            batchStart = journalStream.getChannel().size();
+            batch.writeTo(journalStream);
+            if (fsync) journalStream.getFD().sync();
+            journalRecords += pending.size();
+            pending.clear();
+        } catch (IOException e) {
+            plugin.getLogger().warning("[VerifyMC] Failed to append to user journal, writing snapshot instead: " + e.getMessage());
+            discardPartialBatch(batchStart);
+            compact();
+            return;
+        }
+        if (journalRecords >= compactThreshold) {
+            compact();
+        }
+    }
+
+    /**
+     * Cut a failed batch from the journal so a later append does not follow a torn record.
+     * If that is not possible the journal is closed and writes go to the snapshot until a compaction succeeds.
+     * @param batchStart Journal size before the batch, -1 if nothing was written
+     */
+    private void discardPartialBatch(long batchStart) {
+        if (batchStart < 0 || journalStream == null) return;
+        try {
+            journalStream.getChannel().truncate(batchStart);
+        } catch (IOException e) {
+            plugin.getLogger().warning("[VerifyMC] Failed to roll back user journal, using snapshot writes until compaction succeeds: " + e.getMessage());
+            closeJournal();
+        }
+    }
+
+    /**
+     * Write a new snapshot and truncate the journal.
+     * The journal is only truncated after the snapshot was written, replaying it again is harmless.
+     */
+    public synchronized void compact() {
+        if (!writeSnapshot()) {
+            plugin.getLogger().warning("[VerifyMC] Snapshot write failed, keeping user journal");
+            return;
+        }
+        // The snapshot holds the in-memory state, which includes the pending changes
+        pending.clear();
+        closeJournal();
+        try {
+            journalStream = new FileOutputStream(journalFile, false);
+            journalRecords = 0;
+            debugLog("Journal compacted into snapshot");
+        } catch (IOException e) {
+            plugin.getLogger().warning("[VerifyMC] Failed to reset user journal: " + e.getMessage());
+            journalStream = null;
+        }
+    }
+
+    @Override
+    public synchronized void save() {
+        // Mutations are already durable in the journal, only write the snapshot when the journal is unavailable
+        // (this includes the legacy upgrade save() while the snapshot is loaded, before the journal is opened)
+        if (journalStream == null) {
+            writeSnapshot();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (journalRecords > 0 || !pending.isEmpty()) compact();
+        closeJournal();
+        super.close();
+    }
+}
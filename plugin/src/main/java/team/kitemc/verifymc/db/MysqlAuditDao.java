@@ -2,44 +2,127 @@ package team.kitemc.verifymc.db;
 
 import java.sql.*;
 import java.util.*;
+import org.bukkit.plugin.Plugin;
 
 public class MysqlAuditDao implements AuditDao {
-    private final Connection conn;
+    private static final int INSERT_BATCH_SIZE = 500;
 
-    public MysqlAuditDao(Properties mysqlConfig) throws SQLException {
-        String url = "jdbc:mysql://" + mysqlConfig.getProperty("host") + ":" +
-                mysqlConfig.getProperty("port") + "/" +
-                mysqlConfig.getProperty("database") + "?useSSL=false&characterEncoding=utf8";
-        conn = DriverManager.getConnection(url, mysqlConfig.getProperty("user"), mysqlConfig.getProperty("password"));
-        try (Statement stmt = conn.createStatement()) {
-            stmt.executeUpdate("CREATE TABLE IF NOT EXISTS audits (" +
-                    "id INT AUTO_INCREMENT PRIMARY KEY," +
-                    "action VARCHAR(32)," +
-                    "operator VARCHAR(32)," +
-                    "target VARCHAR(32)," +
-                    "detail TEXT," +
-                    "timestamp BIGINT)");
-        }
+    private final MysqlConnectionPool pool;
+    private final Plugin plugin;
+    private final boolean debug;
+
+    /**
+     * @param pool Shared connection pool, not closed by this DAO
+     * @param plugin Plugin instance
+     * @throws SQLException if the schema cannot be prepared
+     */
+    public MysqlAuditDao(MysqlConnectionPool pool, Plugin plugin) throws SQLException {
+        this.pool = pool;
+        this.plugin = plugin;
+        this.debug = plugin.getConfig().getBoolean("debug", false);
+        new SchemaMigrator(pool, "audits", plugin)
+                .step(1, "create audits table", (conn, stmt) -> stmt.executeUpdate("CREATE TABLE IF NOT EXISTS audits (" +
+                        "id INT AUTO_INCREMENT PRIMARY KEY," +
+                        "action VARCHAR(32)," +
+                        "operator VARCHAR(32)," +
+                        "target VARCHAR(32)," +
+                        "detail TEXT," +
+                        "timestamp BIGINT)"))
+                // Newest-first history pages, optionally for one target or operator.
+                // InnoDB appends the primary key to secondary indexes, so each index is ordered by (..., timestamp, id)
+                .step(2, "add audit history indexes", (conn, stmt) -> {
+                    SchemaMigrator.ensureIndex(stmt, "audits", "idx_audits_timestamp", "timestamp");
+                    SchemaMigrator.ensureIndex(stmt, "audits", "idx_audits_target_timestamp", "target, timestamp");
+                    SchemaMigrator.ensureIndex(stmt, "audits", "idx_audits_operator_timestamp", "operator, timestamp");
+                })
+                .migrate();
+    }
+
+    private void debugLog(String msg) {
+        if (debug) plugin.getLogger().info("[DEBUG] MysqlAuditDao: " + msg);
     }
 
     @Override
     public void addAudit(Map<String, Object> audit) {
-        String sql = "INSERT INTO audits (action, operator, target, detail, timestamp) VALUES (?, ?, ?, ?, ?)";
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, (String)audit.get("action"));
-            ps.setString(2, (String)audit.get("operator"));
-            ps.setString(3, (String)audit.get("target"));
-            ps.setString(4, (String)audit.get("detail"));
-            ps.setLong(5, (Long)audit.get("timestamp"));
+        addAudits(Collections.singletonList(audit));
+    }
+
+    /**
+     * Insert audits with multi-row INSERT statements of up to {@value #INSERT_BATCH_SIZE} rows.
+     * A statement fails as a whole, so a failed chunk is retried row by row to keep the valid entries.
+     * @param audits Audit entries
+     * @return Number of entries stored
+     */
+    @Override
+    public int addAudits(List<Map<String, Object>> audits) {
+        if (audits.isEmpty()) return 0;
+        int stored = 0;
+        try (Connection conn = pool.getConnection()) {
+            for (int start = 0; start < audits.size(); start += INSERT_BATCH_SIZE) {
+                List<Map<String, Object>> chunk = audits.subList(start, Math.min(audits.size(), start + INSERT_BATCH_SIZE));
+                try {
+                    insert(conn, chunk);
+                    stored += chunk.size();
+                } catch (SQLException e) {
+                    if (isConnectionError(e)) throw e;
+                    stored += insertEach(conn, chunk, e);
+                }
+            }
+        } catch (SQLException e) {
+            plugin.getLogger().warning("[VerifyMC] Failed to write " + (audits.size() - stored) + " audit entries: " + e.getMessage());
+        }
+        return stored;
+    }
+
+    private void insert(Connection conn, List<Map<String, Object>> rows) throws SQLException {
+        StringBuilder sql = new StringBuilder("INSERT INTO audits (action, operator, target, detail, timestamp) VALUES ");
+        for (int i = 0; i < rows.size(); i++) {
+            sql.append(i == 0 ? "(?, ?, ?, ?, ?)" : ", (?, ?, ?, ?, ?)");
+        }
+        try (PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+            int index = 1;
+            for (Map<String, Object> audit : rows) {
+                Object timestamp = audit.get("timestamp");
+                ps.setString(index++, (String)audit.get("action"));
+                ps.setString(index++, (String)audit.get("operator"));
+                ps.setString(index++, (String)audit.get("target"));
+                ps.setString(index++, (String)audit.get("detail"));
+                ps.setLong(index++, timestamp instanceof Number ? ((Number) timestamp).longValue() : System.currentTimeMillis());
+            }
             ps.executeUpdate();
-        } catch (SQLException ignored) {}
+        }
+    }
+
+    /**
+     * Insert the rows of a failed multi-row statement one at a time
+     * @param batchError Error of the multi-row statement
+     * @return Number of rows stored
+     * @throws SQLException on a connection error, the remaining rows are not attempted
+     */
+    private int insertEach(Connection conn, List<Map<String, Object>> rows, SQLException batchError) throws SQLException {
+        int stored = 0;
+        for (Map<String, Object> audit : rows) {
+            try {
+                insert(conn, Collections.singletonList(audit));
+                stored++;
+            } catch (SQLException e) {
+                if (isConnectionError(e)) throw e;
+                debugLog("Rejected audit entry (action=" + audit.get("action") + ", target=" + audit.get("target") + "): " + e.getMessage());
+            }
+        }
+        plugin.getLogger().warning("[VerifyMC] Audit batch insert failed: " + batchError.getMessage() + "; stored " + stored + " of " + rows.size() + " entries one at a time");
+        return stored;
+    }
+
+    private static boolean isConnectionError(SQLException e) {
+        return e.getSQLState() != null && e.getSQLState().startsWith("08");
     }
 
     @Override
     public List<Map<String, Object>> getAllAudits() {
         List<Map<String, Object>> result = new ArrayList<>();
         String sql = "SELECT * FROM audits";
-        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+        try (Connection conn = pool.getConnection(); Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
             while (rs.next()) {
                 Map<String, Object> audit = new HashMap<>();
                 audit.put("id", rs.getInt("id"));
@@ -54,8 +137,70 @@ public class MysqlAuditDao implements AuditDao {
         return result;
     }
 
+    @Override
+    public List<Map<String, Object>> queryAudits(String action, String operator, String target, long since, long until, AuditCursor after, int limit) {
+        List<Map<String, Object>> result = new ArrayList<>();
+        if (limit <= 0) return result;
+        StringBuilder sql = new StringBuilder("SELECT id, action, operator, target, detail, timestamp FROM audits WHERE 1=1");
+        List<Object> params = new ArrayList<>();
+        if (action != null) {
+            sql.append(" AND action = ?");
+            params.add(action);
+        }
+        if (operator != null) {
+            sql.append(" AND operator = ?");
+            params.add(operator);
+        }
+        if (target != null) {
+            sql.append(" AND target = ?");
+            params.add(target);
+        }
+        if (since > 0) {
+            sql.append(" AND timestamp >= ?");
+            params.add(since);
+        }
+        if (until > 0) {
+            sql.append(" AND timestamp < ?");
+            params.add(until);
+        }
+        if (after != null) {
+            sql.append(" AND (timestamp < ? OR (timestamp = ? AND id < ?))");
+            params.add(after.getTimestamp());
+            params.add(after.getTimestamp());
+            params.add(after.getId());
+        }
+        sql.append(" ORDER BY timestamp DESC, id DESC LIMIT ?");
+        params.add(limit);
+        try (Connection conn = pool.getConnection(); PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+            for (int i = 0; i < params.size(); i++) {
+                ps.setObject(i + 1, params.get(i));
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Map<String, Object> audit = new HashMap<>();
+                    audit.put("id", rs.getLong("id"));
+                    audit.put("action", rs.getString("action"));
+                    audit.put("operator", rs.getString("operator"));
+                    audit.put("target", rs.getString("target"));
+                    audit.put("detail", rs.getString("detail"));
+                    audit.put("timestamp", rs.getLong("timestamp"));
+                    result.add(audit);
+                }
+            }
+        } catch (SQLException e) {
+            plugin.getLogger().warning("[VerifyMC] Failed to query audits: " + e.getMessage());
+            return null;
+        }
+        return result;
+    }
+
     @Override
     public void save() {
         // MySQL storage: save() called (no-op)
     }
-} 
\ No newline at end of file
+
+    @Override
+    public void close() {
+        // The connection pool is shared and closed by the plugin
+    }
+}
@@ -0,0 +1,350 @@
+package team.kitemc.verifymc.db;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.*;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.logging.Level;
+import org.bukkit.plugin.Plugin;
+
+/**
+ * Small bounded JDBC connection pool shared by the MySQL DAOs.
+ * Connections are validated when they have been idle, retired after their maximum lifetime,
+ * replaced after connection-level errors (including those raised by their statements and result sets),
+ * and reported when held longer than the leak threshold.
+ * Callers use try-with-resources; closing a borrowed connection returns it to the pool.
+ */
+public class MysqlConnectionPool {
+    // Connections returned to the pool within this window are handed out again without validation
+    private static final long VALIDATION_BYPASS_MILLIS = 500;
+
+    private final String url;
+    private final Properties connectionProps;
+    private final Plugin plugin;
+    private final boolean debug;
+    private final int maxSize;
+    private final int minIdle;
+    private final long connectionTimeoutMillis;
+    private final long maxLifetimeMillis;
+    private final long leakDetectionMillis;
+    private final String validationQuery;
+    private final Semaphore permits;
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final Set<PooledConnection> borrowed = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed = false;
+
+    /**
+     * Create the pool and open the minimum number of idle connections
+     * @param mysqlConfig Connection settings (host, port, database, user, password)
+     * @param plugin Plugin instance, pool settings are read from storage.mysql.pool
+     * @throws SQLException if the first connection cannot be opened
+     */
+    public MysqlConnectionPool(Properties mysqlConfig, Plugin plugin) throws SQLException {
+        this.plugin = plugin;
+        this.debug = plugin.getConfig().getBoolean("debug", false);
+        this.url = buildUrl(mysqlConfig, plugin);
+        this.connectionProps = new Properties();
+        connectionProps.setProperty("user", mysqlConfig.getProperty("user"));
+        connectionProps.setProperty("password", mysqlConfig.getProperty("password"));
+        this.maxSize = Math.max(1, plugin.getConfig().getInt("storage.mysql.pool.maximum_pool_size", 10));
+        this.minIdle = Math.max(0, Math.min(maxSize, plugin.getConfig().getInt("storage.mysql.pool.minimum_idle", 2)));
+        this.connectionTimeoutMillis = Math.max(250, plugin.getConfig().getLong("storage.mysql.pool.connection_timeout_ms", 5000));
+        this.maxLifetimeMillis = Math.max(0, plugin.getConfig().getLong("storage.mysql.pool.max_lifetime_ms", 1800000));
+        this.leakDetectionMillis = Math.max(0, plugin.getConfig().getLong("storage.mysql.pool.leak_detection_threshold_ms", 60000));
+        this.validationQuery = plugin.getConfig().getString("storage.mysql.pool.validation_query", "SELECT 1");
+        this.permits = new Semaphore(maxSize, true);
+
+        // Fail fast on wrong credentials, like the previous single connection did
+        idle.offer(open());
+        fillIdle();
+
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, task -> {
+            Thread thread = new Thread(task, "VerifyMC-MysqlPool");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        executor.scheduleWithFixedDelay(this::housekeep, 5, 5, TimeUnit.SECONDS);
+        this.housekeeper = executor;
+        debugLog("Pool started: max=" + maxSize + ", minIdle=" + minIdle);
+    }
+
+    private void debugLog(String msg) {
+        if (debug) plugin.getLogger().info("[DEBUG] MysqlConnectionPool: " + msg);
+    }
+
+    /**
+     * Build the JDBC URL including the statement cache settings from storage.mysql.
+     * Connector/J keeps the prepared statement cache per physical connection, so closing a
+     * PreparedStatement on a pooled connection returns it to that connection's cache.
+     * @param mysqlConfig Connection settings (host, port, database)
+     * @param plugin Plugin instance
+     * @return JDBC URL
+     */
+    static String buildUrl(Properties mysqlConfig, Plugin plugin) {
+        return "jdbc:mysql://" + mysqlConfig.getProperty("host") + ":" +
+                mysqlConfig.getProperty("port") + "/" +
+                mysqlConfig.getProperty("database") + "?useSSL=false&characterEncoding=utf8" +
+                "&cachePrepStmts=" + plugin.getConfig().getBoolean("storage.mysql.cache_prep_stmts", true) +
+                "&useServerPrepStmts=" + plugin.getConfig().getBoolean("storage.mysql.use_server_prep_stmts", true) +
+                "&prepStmtCacheSize=" + Math.max(0, plugin.getConfig().getInt("storage.mysql.prep_stmt_cache_size", 250)) +
+                "&prepStmtCacheSqlLimit=" + Math.max(0, plugin.getConfig().getInt("storage.mysql.prep_stmt_cache_sql_limit", 2048)) +
+                "&rewriteBatchedStatements=" + plugin.getConfig().getBoolean("storage.mysql.rewrite_batched_statements", true) +
+                // Answer getAutoCommit() and friends from driver state instead of a server round trip
+                "&useLocalSessionState=true";
+    }
+
+    /**
+     * Borrow a connection, waiting up to the connection timeout when the pool is exhausted
+     * @return Connection that returns to the pool when closed
+     * @throws SQLException if the pool is closed, exhausted or a new connection cannot be opened
+     */
+    public Connection getConnection() throws SQLException {
+        if (closed) throw new SQLException("Connection pool is closed");
+        try {
+            if (!permits.tryAcquire(connectionTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLTimeoutException("Timed out after " + connectionTimeoutMillis + "ms waiting for a MySQL connection (pool size " + maxSize + ")");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a MySQL connection", e);
+        }
+        try {
+            PooledConnection pooled;
+            while ((pooled = idle.pollFirst()) != null) {
+                if (!pooled.isExpired() && isUsable(pooled)) break;
+                discard(pooled);
+            }
+            if (pooled == null) pooled = open();
+            pooled.borrowedAt = System.currentTimeMillis();
+            pooled.borrowTrace = leakDetectionMillis > 0 ? new Exception("Connection borrowed here") : null;
+            pooled.leakReported = false;
+            borrowed.add(pooled);
+            return pooled.newHandle();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Close all connections and stop housekeeping; borrowed connections are closed when returned
+     */
+    public void close() {
+        if (closed) return;
+        closed = true;
+        housekeeper.shutdownNow();
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) discard(pooled);
+        debugLog("Pool closed, " + borrowed.size() + " connections still borrowed");
+    }
+
+    /**
+     * @return Number of connections currently borrowed
+     */
+    public int getActiveCount() {
+        return borrowed.size();
+    }
+
+    /**
+     * @return Number of idle connections
+     */
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    private PooledConnection open() throws SQLException {
+        Connection raw = DriverManager.getConnection(url, connectionProps);
+        return new PooledConnection(raw);
+    }
+
+    private boolean isUsable(PooledConnection pooled) {
+        if (System.currentTimeMillis() - pooled.returnedAt < VALIDATION_BYPASS_MILLIS) return true;
+        try {
+            if (validationQuery == null || validationQuery.trim().isEmpty()) {
+                return pooled.raw.isValid(5);
+            }
+            try (Statement stmt = pooled.raw.createStatement()) {
+                stmt.setQueryTimeout(5);
+                stmt.execute(validationQuery);
+            }
+            return true;
+        } catch (SQLException e) {
+            debugLog("Validation failed, discarding connection: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void release(PooledConnection pooled) {
+        borrowed.remove(pooled);
+        try {
+            boolean reusable = !closed && !pooled.broken && !pooled.isExpired() && !pooled.raw.isClosed();
+            if (reusable && !pooled.raw.getAutoCommit()) {
+                // Never hand out a connection with an open transaction
+                pooled.raw.rollback();
+                pooled.raw.setAutoCommit(true);
+            }
+            if (reusable) {
+                pooled.returnedAt = System.currentTimeMillis();
+                idle.offerFirst(pooled);
+            } else {
+                discard(pooled);
+            }
+        } catch (SQLException e) {
+            discard(pooled);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void discard(PooledConnection pooled) {
+        try {
+            pooled.raw.close();
+        } catch (SQLException ignored) {}
+    }
+
+    /**
+     * Retire expired idle connections, keep the minimum idle count and report leaks
+     */
+    private void housekeep() {
+        try {
+            for (PooledConnection pooled : idle) {
+                if (pooled.isExpired() && idle.remove(pooled)) {
+                    discard(pooled);
+                    debugLog("Retired connection after max lifetime");
+                }
+            }
+            fillIdle();
+            if (leakDetectionMillis > 0) {
+                long now = System.currentTimeMillis();
+                for (PooledConnection pooled : borrowed) {
+                    if (!pooled.leakReported && now - pooled.borrowedAt > leakDetectionMillis) {
+                        pooled.leakReported = true;
+                        plugin.getLogger().log(Level.WARNING, "[VerifyMC] Possible MySQL connection leak: connection held for "
+                                + (now - pooled.borrowedAt) + "ms", pooled.borrowTrace);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            debugLog("Housekeeping failed: " + e.getMessage());
+        }
+    }
+
+    private void fillIdle() {
+        while (!closed && idle.size() < minIdle && idle.size() + borrowed.size() < maxSize) {
+            try {
+                idle.offerLast(open());
+            } catch (SQLException e) {
+                debugLog("Could not open idle connection: " + e.getMessage());
+                return;
+            }
+        }
+    }
+
+    /**
+     * Physical connection with pool bookkeeping
+     */
+    private final class PooledConnection {
+        final Connection raw;
+        final long createdAt = System.currentTimeMillis();
+        volatile long borrowedAt;
+        volatile long returnedAt = createdAt;
+        volatile Exception borrowTrace;
+        volatile boolean leakReported;
+        volatile boolean broken;
+
+        PooledConnection(Connection raw) {
+            this.raw = raw;
+        }
+
+        boolean isExpired() {
+            return maxLifetimeMillis > 0 && System.currentTimeMillis() - createdAt > maxLifetimeMillis;
+        }
+
+        /**
+         * Create the handle given to one borrower; closing it returns the connection exactly once
+         */
+        Connection newHandle() {
+            InvocationHandler handler = new InvocationHandler() {
+                private boolean handleClosed = false;
+
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    switch (method.getName()) {
+                        case "close":
+                            if (!handleClosed) {
+                                handleClosed = true;
+                                release(PooledConnection.this);
+                            }
+                            return null;
+                        case "isClosed":
+                            return handleClosed || raw.isClosed();
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "toString":
+                            return "PooledConnection[" + raw + "]";
+                        default:
+                            break;
+                    }
+                    if (handleClosed) throw new SQLException("Connection is closed");
+                    Object result = invokeTracked(raw, method, args);
+                    if (result instanceof Statement && Statement.class.isAssignableFrom(method.getReturnType())) {
+                        return track(result, method.getReturnType(), proxy);
+                    }
+                    return result;
+                }
+            };
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, handler);
+        }
+
+        /**
+         * Wrap a statement or result set so that connection errors it raises mark this connection broken
+         * @param target Statement or result set of the raw connection
+         * @param type Interface to expose, e.g. PreparedStatement
+         * @param owner Handle returned by getConnection() or getStatement()
+         */
+        private Object track(Object target, Class<?> type, Object owner) {
+            InvocationHandler handler = (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "getConnection":
+                    case "getStatement":
+                        if (method.getParameterCount() == 0) return owner;
+                        break;
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    default:
+                        break;
+                }
+                Object result = invokeTracked(target, method, args);
+                if (result instanceof ResultSet && method.getReturnType() == ResultSet.class) {
+                    return track(result, ResultSet.class, proxy);
+                }
+                return result;
+            };
+            return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler);
+        }
+
+        private Object invokeTracked(Object target, Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                // SQL state class 08: connection exception, do not return this connection to the pool
+                if (cause instanceof SQLException && ((SQLException) cause).getSQLState() != null
+                        && ((SQLException) cause).getSQLState().startsWith("08")) {
+                    broken = true;
+                }
+                throw cause;
+            }
+        }
+    }
+}
@@ -6,83 +6,194 @@ import org.bukkit.plugin.Plugin;
 import java.util.concurrent.ConcurrentHashMap;
 
 public class MysqlUserDao implements UserDao {
-    private final Connection conn;
+    private final MysqlConnectionPool pool;
+    // Pool created by this DAO itself (standalone use), closed with it
+    private final boolean ownsPool;
     private final ResourceBundle messages;
     private final boolean debug;
     private final Plugin plugin;
+    // Cleared when the server rejects COUNT(*) OVER() (MySQL before 8.0)
+    private volatile boolean windowFunctions = true;
+    // UUIDs per IN (...) list of a bulk status update
+    private static final int STATUS_BATCH_SIZE = 500;
+    // Set when the ngram FULLTEXT index exists and storage.mysql.fulltext_search is enabled
+    private final boolean fullText;
+    private final int ngramTokenSize;
+    // Rank search hits: exact username, username prefix, email prefix, then any substring; newest first within a rank
+    private static final String SEARCH_ORDER = "CASE WHEN username_lc = LOWER(?) THEN 0 WHEN username_lc LIKE LOWER(?) ESCAPE '!' THEN 1" +
+            " WHEN email_lc LIKE LOWER(?) ESCAPE '!' THEN 2 ELSE 3 END, regTime DESC, uuid DESC";
 
     public MysqlUserDao(Properties mysqlConfig, ResourceBundle messages, Plugin plugin) throws SQLException {
+        this(new MysqlConnectionPool(mysqlConfig, plugin), true, messages, plugin);
+    }
+
+    /**
+     * @param pool Shared connection pool, not closed by this DAO
+     * @param messages Message bundle
+     * @param plugin Plugin instance
+     * @throws SQLException if the schema cannot be prepared
+     */
+    public MysqlUserDao(MysqlConnectionPool pool, ResourceBundle messages, Plugin plugin) throws SQLException {
+        this(pool, false, messages, plugin);
+    }
+
+    private MysqlUserDao(MysqlConnectionPool pool, boolean ownsPool, ResourceBundle messages, Plugin plugin) throws SQLException {
+        this.pool = pool;
+        this.ownsPool = ownsPool;
         this.messages = messages;
         this.plugin = plugin;
         this.debug = plugin.getConfig().getBoolean("debug", false);
-        String url = "jdbc:mysql://" + mysqlConfig.getProperty("host") + ":" +
-                mysqlConfig.getProperty("port") + "/" +
-                mysqlConfig.getProperty("database") + "?useSSL=false&characterEncoding=utf8";
-        conn = DriverManager.getConnection(url, mysqlConfig.getProperty("user"), mysqlConfig.getProperty("password"));
-        try (Statement stmt = conn.createStatement()) {
-            // Create users table (if not exists)
-            stmt.executeUpdate("CREATE TABLE IF NOT EXISTS users (" +
-                    "uuid VARCHAR(36) PRIMARY KEY," +
-                    "username VARCHAR(32) NOT NULL," +
-                    "email VARCHAR(64)," +
-                    "status VARCHAR(16)," +
-                    "password VARCHAR(255)," +
-                    "regTime BIGINT)");
-            
-            // Compatibility handling: Check and add missing fields
-            try {
-                stmt.executeQuery("SELECT password FROM users LIMIT 1");
-                debugLog("Password column already exists in users table");
-            } catch (SQLException e) {
-                // password field doesn't exist, add it
-                stmt.executeUpdate("ALTER TABLE users ADD COLUMN password VARCHAR(255)");
-                debugLog("Added password column to users table");
-            }
-            
-            // Check if regTime field exists
-            try {
-                stmt.executeQuery("SELECT regTime FROM users LIMIT 1");
-                debugLog("regTime column already exists in users table");
-            } catch (SQLException e) {
-                // regTime field doesn't exist, add it
-                stmt.executeUpdate("ALTER TABLE users ADD COLUMN regTime BIGINT");
-                debugLog("Added regTime column to users table");
-                
-                // Set default regTime value for existing records
-                stmt.executeUpdate("UPDATE users SET regTime = " + System.currentTimeMillis() + " WHERE regTime IS NULL");
-                debugLog("Updated existing records with default regTime value");
-            }
-            
-            // Check and ensure indexes exist
-            try {
-                stmt.executeQuery("SHOW INDEX FROM users WHERE Key_name = 'idx_username'");
-                debugLog("Username index already exists");
-            } catch (SQLException e) {
-                // Add username index to improve query performance
-                stmt.executeUpdate("CREATE INDEX idx_username ON users(username)");
-                debugLog("Added username index to users table");
-            }
-            
-            try {
-                stmt.executeQuery("SHOW INDEX FROM users WHERE Key_name = 'idx_email'");
-                debugLog("Email index already exists");
+        int version = new SchemaMigrator(pool, "users", plugin)
+                .step(1, "create users table", (conn, stmt) -> stmt.executeUpdate("CREATE TABLE IF NOT EXISTS users (" +
+                        "uuid VARCHAR(36) PRIMARY KEY," +
+                        "username VARCHAR(32) NOT NULL," +
+                        "email VARCHAR(64)," +
+                        "status VARCHAR(16)," +
+                        "password VARCHAR(255)," +
+                        "regTime BIGINT)"))
+                // Compatibility handling: tables created by old versions lack these columns
+                .step(2, "add password column", (conn, stmt) ->
+                        SchemaMigrator.ensureColumn(stmt, "users", "password", "VARCHAR(255)"))
+                .step(3, "add regTime column", (conn, stmt) -> {
+                    if (SchemaMigrator.ensureColumn(stmt, "users", "regTime", "BIGINT")) {
+                        // Set default regTime value for existing records
+                        try (PreparedStatement ps = conn.prepareStatement("UPDATE users SET regTime = ? WHERE regTime IS NULL")) {
+                            ps.setLong(1, System.currentTimeMillis());
+                            ps.executeUpdate();
+                        }
+                    }
+                })
+                .step(4, "add username and email indexes", (conn, stmt) -> {
+                    SchemaMigrator.ensureIndex(stmt, "users", "idx_username", "username");
+                    SchemaMigrator.ensureIndex(stmt, "users", "idx_email", "email");
+                })
+                // Lower-cased copies maintained by MySQL, so case-insensitive lookups are index seeks instead of LOWER() scans
+                .step(5, "add lower-cased username and email columns", (conn, stmt) -> {
+                    SchemaMigrator.ensureColumn(stmt, "users", "username_lc", "VARCHAR(32) AS (LOWER(username)) STORED");
+                    SchemaMigrator.ensureColumn(stmt, "users", "email_lc", "VARCHAR(64) AS (LOWER(email)) STORED");
+                    SchemaMigrator.ensureIndex(stmt, "users", "idx_username_lc", "username_lc");
+                    SchemaMigrator.ensureIndex(stmt, "users", "idx_email_lc", "email_lc");
+                })
+                // Keyset pagination of the admin list: status filter plus (regTime, uuid) order
+                .step(6, "add registration time indexes", (conn, stmt) -> {
+                    SchemaMigrator.ensureIndex(stmt, "users", "idx_status_regtime_uuid", "status, regTime, uuid");
+                    SchemaMigrator.ensureIndex(stmt, "users", "idx_regtime_uuid", "regTime, uuid");
+                })
+                // Substring search for the admin list; servers without the ngram parser (e.g. MariaDB) keep using LIKE
+                .step(7, "add ngram full-text search index", (conn, stmt) -> {
+                    try {
+                        SchemaMigrator.ensureFullTextIndex(stmt, "users", "ft_users_search", "username, email", "ngram");
+                    } catch (SQLException e) {
+                        plugin.getLogger().warning("[VerifyMC] Could not create ngram full-text index, user search will use LIKE: " + e.getMessage());
+                    }
+                })
+                .migrate();
+        debugLog("Users schema at version " + version);
+        boolean fullTextAvailable = false;
+        int tokenSize = 2;
+        if (plugin.getConfig().getBoolean("storage.mysql.fulltext_search", true)) {
+            try (Connection conn = pool.getConnection(); Statement stmt = conn.createStatement()) {
+                fullTextAvailable = SchemaMigrator.indexExists(stmt, "users", "ft_users_search");
+                try (ResultSet rs = stmt.executeQuery("SHOW VARIABLES LIKE 'ngram_token_size'")) {
+                    if (rs.next()) tokenSize = rs.getInt(2);
+                }
             } catch (SQLException e) {
-                // Add email index to improve query performance
-                stmt.executeUpdate("CREATE INDEX idx_email ON users(email)");
-                debugLog("Added email index to users table");
+                debugLog("Full-text search detection failed: " + e.getMessage());
+                fullTextAvailable = false;
             }
         }
+        this.fullText = fullTextAvailable;
+        this.ngramTokenSize = Math.max(1, tokenSize);
+        debugLog("Full-text user search " + (fullText ? "enabled, ngram_token_size=" + ngramTokenSize : "disabled"));
     }
 
     private void debugLog(String msg) {
         if (debug) plugin.getLogger().info("[DEBUG] MysqlUserDao: " + msg);
     }
 
+    /**
+     * Trim a search query
+     * @param searchQuery Raw query
+     * @return Trimmed query, or null if there is nothing to search for
+     */
+    private static String normalizeSearch(String searchQuery) {
+        if (searchQuery == null) return null;
+        String search = searchQuery.trim();
+        return search.isEmpty() ? null : search;
+    }
+
+    /**
+     * Whether a query can be narrowed through the ngram index. The phrase must be at least one token long,
+     * and only letters and digits are used so every LIKE match is also a full-text match.
+     */
+    private boolean useFullText(String search) {
+        if (!fullText || search.codePointCount(0, search.length()) < ngramTokenSize) return false;
+        return search.codePoints().allMatch(Character::isLetterOrDigit);
+    }
+
+    /**
+     * SQL condition matching users whose username or email contains the query; bind with {@link #bindSearch}
+     * @param search Trimmed, non-empty query
+     * @return SQL condition
+     */
+    private String searchPredicate(String search) {
+        String like = "(username_lc LIKE LOWER(?) ESCAPE '!' OR email_lc LIKE LOWER(?) ESCAPE '!')";
+        if (!useFullText(search)) return like;
+        // The index finds candidates, LIKE keeps the exact substring semantics
+        return "(MATCH(username, email) AGAINST(? IN BOOLEAN MODE) AND " + like + ")";
+    }
+
+    /**
+     * Bind the parameters of {@link #searchPredicate}
+     * @return Next parameter index
+     */
+    private int bindSearch(PreparedStatement ps, int index, String search) throws SQLException {
+        if (useFullText(search)) {
+            ps.setString(index++, "\"" + search + "\"");
+        }
+        String pattern = "%" + escapeLike(search) + "%";
+        ps.setString(index++, pattern);
+        ps.setString(index++, pattern);
+        return index;
+    }
+
+    /**
+     * Bind the parameters of {@link #SEARCH_ORDER}
+     * @return Next parameter index
+     */
+    private static int bindSearchOrder(PreparedStatement ps, int index, String search) throws SQLException {
+        String prefix = escapeLike(search) + "%";
+        ps.setString(index++, search);
+        ps.setString(index++, prefix);
+        ps.setString(index++, prefix);
+        return index;
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("!", "!!").replace("%", "!%").replace("_", "!_");
+    }
+
+    /**
+     * Read the current row of a users query
+     * @param rs Result set positioned at a row
+     * @return User record
+     * @throws SQLException if a column cannot be read
+     */
+    private UserRecord readUser(ResultSet rs) throws SQLException {
+        return new UserRecord(
+                rs.getString("uuid"),
+                rs.getString("username"),
+                rs.getString("email"),
+                rs.getString("status"),
+                rs.getString("password"),
+                rs.getLong("regTime"));
+    }
+
     @Override
     public boolean registerUser(String uuid, String username, String email, String status) {
         // First check if user already exists
         String checkSql = "SELECT uuid FROM users WHERE uuid = ?";
-        try (PreparedStatement checkPs = conn.prepareStatement(checkSql)) {
+        try (Connection conn = pool.getConnection(); PreparedStatement checkPs = conn.prepareStatement(checkSql)) {
             checkPs.setString(1, uuid);
             ResultSet rs = checkPs.executeQuery();
             if (rs.next()) {
@@ -95,7 +206,7 @@ public class MysqlUserDao implements UserDao {
         }
         
         String sql = "INSERT INTO users (uuid, username, email, status, regTime) VALUES (?, ?, ?, ?, ?)";
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+        try (Connection conn = pool.getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setString(1, uuid);
             ps.setString(2, username);
             ps.setString(3, email);
@@ -114,7 +225,7 @@ public class MysqlUserDao implements UserDao {
     public boolean registerUser(String uuid, String username, String email, String status, String password) {
         // First check if user already exists
         String checkSql = "SELECT uuid FROM users WHERE uuid = ?";
-        try (PreparedStatement checkPs = conn.prepareStatement(checkSql)) {
+        try (Connection conn = pool.getConnection(); PreparedStatement checkPs = conn.prepareStatement(checkSql)) {
             checkPs.setString(1, uuid);
             ResultSet rs = checkPs.executeQuery();
             if (rs.next()) {
@@ -127,7 +238,7 @@ public class MysqlUserDao implements UserDao {
         }
         
         String sql = "INSERT INTO users (uuid, username, email, status, password, regTime) VALUES (?, ?, ?, ?, ?, ?)";
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+        try (Connection conn = pool.getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setString(1, uuid);
             ps.setString(2, username);
             ps.setString(3, email);
@@ -145,8 +256,8 @@ public class MysqlUserDao implements UserDao {
 
     @Override
     public boolean updateUserStatus(String uuidOrName, String status) {
-        String sql = "UPDATE users SET status=? WHERE uuid=? OR username=?";
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+        String sql = "UPDATE users SET status=? WHERE uuid=? OR username_lc=LOWER(?)";
+        try (Connection conn = pool.getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setString(1, status);
             ps.setString(2, uuidOrName);
             ps.setString(3, uuidOrName);
@@ -159,10 +270,52 @@ public class MysqlUserDao implements UserDao {
         }
     }
 
+    @Override
+    public List<Map<String, Object>> updateUserStatuses(Collection<String> uuids, String status) {
+        debugLog("updateUserStatuses called: " + uuids.size() + " users, status=" + status);
+        List<String> distinct = new ArrayList<>(new LinkedHashSet<>(uuids));
+        distinct.removeIf(Objects::isNull);
+        List<Map<String, Object>> result = new ArrayList<>();
+        if (distinct.isEmpty()) return result;
+        try (Connection conn = pool.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                for (int from = 0; from < distinct.size(); from += STATUS_BATCH_SIZE) {
+                    List<String> chunk = distinct.subList(from, Math.min(distinct.size(), from + STATUS_BATCH_SIZE));
+                    String placeholders = String.join(",", Collections.nCopies(chunk.size(), "?"));
+                    // Lock the rows first so the returned users are exactly the ones this transaction updates
+                    List<UserRecord> locked = new ArrayList<>();
+                    try (PreparedStatement ps = conn.prepareStatement("SELECT * FROM users WHERE uuid IN (" + placeholders + ") FOR UPDATE")) {
+                        for (int i = 0; i < chunk.size(); i++) ps.setString(i + 1, chunk.get(i));
+                        try (ResultSet rs = ps.executeQuery()) {
+                            while (rs.next()) locked.add(readUser(rs));
+                        }
+                    }
+                    if (locked.isEmpty()) continue;
+                    try (PreparedStatement ps = conn.prepareStatement("UPDATE users SET status=? WHERE uuid IN (" + placeholders + ")")) {
+                        ps.setString(1, status);
+                        for (int i = 0; i < chunk.size(); i++) ps.setString(i + 2, chunk.get(i));
+                        ps.executeUpdate();
+                    }
+                    for (UserRecord user : locked) result.add(user.withStatus(status).toMap());
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            debugLog(messages.getString("storage.migrate.fail").replace("{0}", e.getMessage()));
+            return new ArrayList<>();
+        }
+        debugLog("Updated status of " + result.size() + " users to " + status);
+        return result;
+    }
+
     @Override
     public boolean updateUserPassword(String uuidOrName, String password) {
-        String sql = "UPDATE users SET password=? WHERE uuid=? OR username=?";
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+        String sql = "UPDATE users SET password=? WHERE uuid=? OR username_lc=LOWER(?)";
+        try (Connection conn = pool.getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setString(1, password);
             ps.setString(2, uuidOrName);
             ps.setString(3, uuidOrName);
@@ -179,16 +332,9 @@ public class MysqlUserDao implements UserDao {
     public List<Map<String, Object>> getAllUsers() {
         List<Map<String, Object>> result = new ArrayList<>();
         String sql = "SELECT * FROM users";
-        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+        try (Connection conn = pool.getConnection(); Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
             while (rs.next()) {
-                Map<String, Object> user = new HashMap<>();
-                user.put("uuid", rs.getString("uuid"));
-                user.put("username", rs.getString("username"));
-                user.put("email", rs.getString("email"));
-                user.put("status", rs.getString("status"));
-                user.put("password", rs.getString("password"));
-                user.put("regTime", rs.getLong("regTime"));
-                result.add(user);
+                result.add(readUser(rs).toMap());
             }
         } catch (SQLException e) {
             debugLog(messages.getString("storage.migrate.fail").replace("{0}", e.getMessage()));
@@ -200,16 +346,9 @@ public class MysqlUserDao implements UserDao {
     public List<Map<String, Object>> getPendingUsers() {
         List<Map<String, Object>> result = new ArrayList<>();
         String sql = "SELECT * FROM users WHERE status='pending'";
-        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+        try (Connection conn = pool.getConnection(); Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
             while (rs.next()) {
-                Map<String, Object> user = new HashMap<>();
-                user.put("uuid", rs.getString("uuid"));
-                user.put("username", rs.getString("username"));
-                user.put("email", rs.getString("email"));
-                user.put("status", rs.getString("status"));
-                user.put("password", rs.getString("password"));
-                user.put("regTime", rs.getLong("regTime"));
-                result.add(user);
+                result.add(readUser(rs).toMap());
             }
         } catch (SQLException e) {
             debugLog(messages.getString("storage.migrate.fail").replace("{0}", e.getMessage()));
@@ -220,18 +359,11 @@ public class MysqlUserDao implements UserDao {
     @Override
     public Map<String, Object> getUserByUuid(String uuid) {
         String sql = "SELECT * FROM users WHERE uuid=?";
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+        try (Connection conn = pool.getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setString(1, uuid);
             try (ResultSet rs = ps.executeQuery()) {
                 if (rs.next()) {
-                    Map<String, Object> user = new HashMap<>();
-                    user.put("uuid", rs.getString("uuid"));
-                    user.put("username", rs.getString("username"));
-                    user.put("email", rs.getString("email"));
-                    user.put("status", rs.getString("status"));
-                    user.put("password", rs.getString("password"));
-                    user.put("regTime", rs.getLong("regTime"));
-                    return user;
+                    return readUser(rs).toMap();
                 }
             }
         } catch (SQLException e) {
@@ -242,19 +374,12 @@ public class MysqlUserDao implements UserDao {
 
     @Override
     public Map<String, Object> getUserByUsername(String username) {
-        String sql = "SELECT * FROM users WHERE LOWER(username)=LOWER(?)";
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+        String sql = "SELECT * FROM users WHERE username_lc=LOWER(?)";
+        try (Connection conn = pool.getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setString(1, username);
             try (ResultSet rs = ps.executeQuery()) {
                 if (rs.next()) {
-                    Map<String, Object> user = new HashMap<>();
-                    user.put("uuid", rs.getString("uuid"));
-                    user.put("username", rs.getString("username"));
-                    user.put("email", rs.getString("email"));
-                    user.put("status", rs.getString("status"));
-                    user.put("password", rs.getString("password"));
-                    user.put("regTime", rs.getLong("regTime"));
-                    return user;
+                    return readUser(rs).toMap();
                 }
             }
         } catch (SQLException e) {
@@ -265,8 +390,8 @@ public class MysqlUserDao implements UserDao {
 
     @Override
     public boolean deleteUser(String uuidOrName) {
-        String sql = "DELETE FROM users WHERE uuid=? OR username=?";
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+        String sql = "DELETE FROM users WHERE uuid=? OR username_lc=LOWER(?)";
+        try (Connection conn = pool.getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setString(1, uuidOrName);
             ps.setString(2, uuidOrName);
             int rows = ps.executeUpdate();
@@ -281,8 +406,8 @@ public class MysqlUserDao implements UserDao {
     @Override
     public int countUsersByEmail(String email) {
         int count = 0;
-        String sql = "SELECT COUNT(*) FROM users WHERE LOWER(email)=LOWER(?)";
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+        String sql = "SELECT COUNT(*) FROM users WHERE email_lc=LOWER(?)";
+        try (Connection conn = pool.getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setString(1, email);
             try (ResultSet rs = ps.executeQuery()) {
                 if (rs.next()) {
@@ -300,6 +425,11 @@ public class MysqlUserDao implements UserDao {
         // MySQL implementation can be empty or just log message
         debugLog("MySQL storage: save() called (no-op)");
     }
+
+    @Override
+    public void close() {
+        if (ownsPool) pool.close();
+    }
     
     @Override
     public List<Map<String, Object>> getUsersWithPagination(int page, int pageSize) {
@@ -307,20 +437,13 @@ public class MysqlUserDao implements UserDao {
         List<Map<String, Object>> result = new ArrayList<>();
         int offset = (page - 1) * pageSize;
         
-        String sql = "SELECT * FROM users ORDER BY regTime DESC LIMIT ? OFFSET ?";
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+        String sql = "SELECT * FROM users ORDER BY regTime DESC, uuid DESC LIMIT ? OFFSET ?";
+        try (Connection conn = pool.getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setInt(1, pageSize);
             ps.setInt(2, offset);
             try (ResultSet rs = ps.executeQuery()) {
                 while (rs.next()) {
-                    Map<String, Object> user = new HashMap<>();
-                    user.put("uuid", rs.getString("uuid"));
-                    user.put("username", rs.getString("username"));
-                    user.put("email", rs.getString("email"));
-                    user.put("status", rs.getString("status"));
-                    user.put("password", rs.getString("password"));
-                    user.put("regTime", rs.getLong("regTime"));
-                    result.add(user);
+                    result.add(readUser(rs).toMap());
                 }
             }
         } catch (SQLException e) {
@@ -336,7 +459,7 @@ public class MysqlUserDao implements UserDao {
         debugLog("Getting total user count");
         int count = 0;
         String sql = "SELECT COUNT(*) FROM users";
-        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+        try (Connection conn = pool.getConnection(); Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
             if (rs.next()) {
                 count = rs.getInt(1);
             }
@@ -353,36 +476,27 @@ public class MysqlUserDao implements UserDao {
         debugLog("Getting users with pagination and search: page=" + page + ", pageSize=" + pageSize + ", query=" + searchQuery);
         List<Map<String, Object>> result = new ArrayList<>();
         int offset = (page - 1) * pageSize;
+        String search = normalizeSearch(searchQuery);
         
         String sql;
-        if (searchQuery == null || searchQuery.trim().isEmpty()) {
-            sql = "SELECT * FROM users ORDER BY regTime DESC LIMIT ? OFFSET ?";
+        if (search == null) {
+            sql = "SELECT * FROM users ORDER BY regTime DESC, uuid DESC LIMIT ? OFFSET ?";
         } else {
-            sql = "SELECT * FROM users WHERE LOWER(username) LIKE LOWER(?) OR LOWER(email) LIKE LOWER(?) ORDER BY regTime DESC LIMIT ? OFFSET ?";
+            sql = "SELECT * FROM users WHERE " + searchPredicate(search) + " ORDER BY " + SEARCH_ORDER + " LIMIT ? OFFSET ?";
         }
         
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
-            if (searchQuery == null || searchQuery.trim().isEmpty()) {
-                ps.setInt(1, pageSize);
-                ps.setInt(2, offset);
-            } else {
-                String searchPattern = "%" + searchQuery.trim() + "%";
-                ps.setString(1, searchPattern);
-                ps.setString(2, searchPattern);
-                ps.setInt(3, pageSize);
-                ps.setInt(4, offset);
+        try (Connection conn = pool.getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
+            int index = 1;
+            if (search != null) {
+                index = bindSearch(ps, index, search);
+                index = bindSearchOrder(ps, index, search);
             }
+            ps.setInt(index++, pageSize);
+            ps.setInt(index, offset);
             
             try (ResultSet rs = ps.executeQuery()) {
                 while (rs.next()) {
-                    Map<String, Object> user = new HashMap<>();
-                    user.put("uuid", rs.getString("uuid"));
-                    user.put("username", rs.getString("username"));
-                    user.put("email", rs.getString("email"));
-                    user.put("status", rs.getString("status"));
-                    user.put("password", rs.getString("password"));
-                    user.put("regTime", rs.getLong("regTime"));
-                    result.add(user);
+                    result.add(readUser(rs).toMap());
                 }
             }
         } catch (SQLException e) {
@@ -397,19 +511,18 @@ public class MysqlUserDao implements UserDao {
     public int getTotalUserCountWithSearch(String searchQuery) {
         debugLog("Getting total user count with search: query=" + searchQuery);
         int count = 0;
+        String search = normalizeSearch(searchQuery);
         
         String sql;
-        if (searchQuery == null || searchQuery.trim().isEmpty()) {
+        if (search == null) {
             sql = "SELECT COUNT(*) FROM users";
         } else {
-            sql = "SELECT COUNT(*) FROM users WHERE LOWER(username) LIKE LOWER(?) OR LOWER(email) LIKE LOWER(?)";
+            sql = "SELECT COUNT(*) FROM users WHERE " + searchPredicate(search);
         }
         
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
-            if (searchQuery != null && !searchQuery.trim().isEmpty()) {
-                String searchPattern = "%" + searchQuery.trim() + "%";
-                ps.setString(1, searchPattern);
-                ps.setString(2, searchPattern);
+        try (Connection conn = pool.getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
+            if (search != null) {
+                bindSearch(ps, 1, search);
             }
             
             try (ResultSet rs = ps.executeQuery()) {
@@ -430,7 +543,7 @@ public class MysqlUserDao implements UserDao {
         debugLog("Getting approved user count (excluding pending)");
         int count = 0;
         String sql = "SELECT COUNT(*) FROM users WHERE status != 'pending'";
-        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+        try (Connection conn = pool.getConnection(); Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
             if (rs.next()) {
                 count = rs.getInt(1);
             }
@@ -446,19 +559,18 @@ public class MysqlUserDao implements UserDao {
     public int getApprovedUserCountWithSearch(String searchQuery) {
         debugLog("Getting approved user count with search: query=" + searchQuery);
         int count = 0;
+        String search = normalizeSearch(searchQuery);
         
         String sql;
-        if (searchQuery == null || searchQuery.trim().isEmpty()) {
+        if (search == null) {
             sql = "SELECT COUNT(*) FROM users WHERE status != 'pending'";
         } else {
-            sql = "SELECT COUNT(*) FROM users WHERE status != 'pending' AND (LOWER(username) LIKE LOWER(?) OR LOWER(email) LIKE LOWER(?))";
+            sql = "SELECT COUNT(*) FROM users WHERE status != 'pending' AND " + searchPredicate(search);
         }
         
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
-            if (searchQuery != null && !searchQuery.trim().isEmpty()) {
-                String searchPattern = "%" + searchQuery.trim() + "%";
-                ps.setString(1, searchPattern);
-                ps.setString(2, searchPattern);
+        try (Connection conn = pool.getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
+            if (search != null) {
+                bindSearch(ps, 1, search);
             }
             
             try (ResultSet rs = ps.executeQuery()) {
@@ -480,20 +592,13 @@ public class MysqlUserDao implements UserDao {
         List<Map<String, Object>> result = new ArrayList<>();
         int offset = (page - 1) * pageSize;
         
-        String sql = "SELECT * FROM users WHERE status != 'pending' ORDER BY regTime DESC LIMIT ? OFFSET ?";
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+        String sql = "SELECT * FROM users WHERE status != 'pending' ORDER BY regTime DESC, uuid DESC LIMIT ? OFFSET ?";
+        try (Connection conn = pool.getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setInt(1, pageSize);
             ps.setInt(2, offset);
             try (ResultSet rs = ps.executeQuery()) {
                 while (rs.next()) {
-                    Map<String, Object> user = new HashMap<>();
-                    user.put("uuid", rs.getString("uuid"));
-                    user.put("username", rs.getString("username"));
-                    user.put("email", rs.getString("email"));
-                    user.put("status", rs.getString("status"));
-                    user.put("password", rs.getString("password"));
-                    user.put("regTime", rs.getLong("regTime"));
-                    result.add(user);
+                    result.add(readUser(rs).toMap());
                 }
             }
         } catch (SQLException e) {
@@ -509,36 +614,27 @@ public class MysqlUserDao implements UserDao {
         debugLog("Getting approved users with pagination and search: page=" + page + ", pageSize=" + pageSize + ", query=" + searchQuery);
         List<Map<String, Object>> result = new ArrayList<>();
         int offset = (page - 1) * pageSize;
+        String search = normalizeSearch(searchQuery);
         
         String sql;
-        if (searchQuery == null || searchQuery.trim().isEmpty()) {
-            sql = "SELECT * FROM users WHERE status != 'pending' ORDER BY regTime DESC LIMIT ? OFFSET ?";
+        if (search == null) {
+            sql = "SELECT * FROM users WHERE status != 'pending' ORDER BY regTime DESC, uuid DESC LIMIT ? OFFSET ?";
         } else {
-            sql = "SELECT * FROM users WHERE status != 'pending' AND (LOWER(username) LIKE LOWER(?) OR LOWER(email) LIKE LOWER(?)) ORDER BY regTime DESC LIMIT ? OFFSET ?";
+            sql = "SELECT * FROM users WHERE status != 'pending' AND " + searchPredicate(search) + " ORDER BY " + SEARCH_ORDER + " LIMIT ? OFFSET ?";
         }
         
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
-            if (searchQuery == null || searchQuery.trim().isEmpty()) {
-                ps.setInt(1, pageSize);
-                ps.setInt(2, offset);
-            } else {
-                String searchPattern = "%" + searchQuery.trim() + "%";
-                ps.setString(1, searchPattern);
-                ps.setString(2, searchPattern);
-                ps.setInt(3, pageSize);
-                ps.setInt(4, offset);
+        try (Connection conn = pool.getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
+            int index = 1;
+            if (search != null) {
+                index = bindSearch(ps, index, search);
+                index = bindSearchOrder(ps, index, search);
             }
+            ps.setInt(index++, pageSize);
+            ps.setInt(index, offset);
             
             try (ResultSet rs = ps.executeQuery()) {
                 while (rs.next()) {
-                    Map<String, Object> user = new HashMap<>();
-                    user.put("uuid", rs.getString("uuid"));
-                    user.put("username", rs.getString("username"));
-                    user.put("email", rs.getString("email"));
-                    user.put("status", rs.getString("status"));
-                    user.put("password", rs.getString("password"));
-                    user.put("regTime", rs.getLong("regTime"));
-                    result.add(user);
+                    result.add(readUser(rs).toMap());
                 }
             }
         } catch (SQLException e) {
@@ -548,4 +644,125 @@ public class MysqlUserDao implements UserDao {
         debugLog("Returning " + result.size() + " approved users for page " + page + " with search query: " + searchQuery);
         return result;
     }
-} 
\ No newline at end of file
+    
+    @Override
+    public List<Map<String, Object>> getApprovedUsersAfter(UserCursor after, int pageSize, String searchQuery) {
+        debugLog("Getting approved users after cursor: pageSize=" + pageSize + ", query=" + searchQuery);
+        List<Map<String, Object>> result = new ArrayList<>();
+        String search = normalizeSearch(searchQuery);
+        StringBuilder sql = new StringBuilder("SELECT * FROM users WHERE status != 'pending'");
+        if (after != null) {
+            // Row-by-row form of (regTime, uuid) < (?, ?) so MySQL can seek into idx_regtime_uuid
+            sql.append(" AND (regTime < ? OR (regTime = ? AND uuid < ?))");
+        }
+        if (search != null) {
+            sql.append(" AND ").append(searchPredicate(search));
+        }
+        // Keyset pages keep newest-first order even when searching, so the cursor stays meaningful
+        sql.append(" ORDER BY regTime DESC, uuid DESC LIMIT ?");
+        
+        try (Connection conn = pool.getConnection(); PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+            int index = 1;
+            if (after != null) {
+                ps.setLong(index++, after.getRegTime());
+                ps.setLong(index++, after.getRegTime());
+                ps.setString(index++, after.getUuid());
+            }
+            if (search != null) {
+                index = bindSearch(ps, index, search);
+            }
+            ps.setInt(index, pageSize);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    result.add(readUser(rs).toMap());
+                }
+            }
+        } catch (SQLException e) {
+            debugLog("Error getting approved users after cursor: " + e.getMessage());
+        }
+        
+        debugLog("Returning " + result.size() + " approved users after cursor");
+        return result;
+    }
+    
+    @Override
+    public UserPage getApprovedUsersPage(int page, int pageSize, String searchQuery, UserCursor after) {
+        debugLog("Getting approved users page with count: page=" + page + ", pageSize=" + pageSize + ", query=" + searchQuery + ", cursor=" + (after != null));
+        String search = normalizeSearch(searchQuery);
+        boolean hasSearch = search != null;
+        List<Map<String, Object>> users = null;
+        int totalCount = -1;
+        // Cursor pages use the indexed keyset query plus a separate count: a window over all matches
+        // would be materialized before the keyset condition, turning every cursor page into a full scan
+        if (windowFunctions && after == null) {
+            try {
+                users = new ArrayList<>();
+                totalCount = queryPageWithCount(page, pageSize, search, users);
+            } catch (SQLException e) {
+                if (e.getErrorCode() == 1064) {
+                    // Syntax error: no window function support, stop trying
+                    windowFunctions = false;
+                }
+                debugLog("Page with count query failed, using separate queries: " + e.getMessage());
+                users = null;
+                totalCount = -1;
+            }
+        }
+        if (users == null) {
+            if (after != null) {
+                users = getApprovedUsersAfter(after, pageSize, searchQuery);
+            } else if (hasSearch) {
+                users = getApprovedUsersWithPaginationAndSearch(page, pageSize, searchQuery);
+            } else {
+                users = getApprovedUsersWithPagination(page, pageSize);
+            }
+        }
+        if (totalCount < 0) {
+            // Cursor page, empty page or failed combined query: the count is not known yet
+            totalCount = hasSearch ? getApprovedUserCountWithSearch(searchQuery) : getApprovedUserCount();
+        }
+        debugLog("Returning " + users.size() + " of " + totalCount + " approved users");
+        return new UserPage(users, totalCount);
+    }
+
+    /**
+     * Read one offset page and the total match count with a single COUNT(*) OVER() query
+     * @param page Page number
+     * @param pageSize Page size
+     * @param search Trimmed search query or null; hits are ranked by {@link #SEARCH_ORDER}
+     * @param users Receives the page content
+     * @return Total count, or -1 if the page was empty so the count is unknown
+     * @throws SQLException if the query fails
+     */
+    private int queryPageWithCount(int page, int pageSize, String search, List<Map<String, Object>> users) throws SQLException {
+        StringBuilder filtered = new StringBuilder("SELECT u.*, COUNT(*) OVER() AS total_count FROM users u WHERE u.status != 'pending'");
+        if (search != null) {
+            filtered.append(" AND ").append(searchPredicate(search));
+        }
+        String sql;
+        if (search != null) {
+            sql = filtered + " ORDER BY " + SEARCH_ORDER + " LIMIT ? OFFSET ?";
+        } else {
+            sql = filtered + " ORDER BY u.regTime DESC, u.uuid DESC LIMIT ? OFFSET ?";
+        }
+        int totalCount = -1;
+        try (Connection conn = pool.getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
+            int index = 1;
+            if (search != null) {
+                index = bindSearch(ps, index, search);
+            }
+            if (search != null) {
+                index = bindSearchOrder(ps, index, search);
+            }
+            ps.setInt(index++, pageSize);
+            ps.setInt(index, Math.max(0, (page - 1) * pageSize));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    totalCount = rs.getInt("total_count");
+                    users.add(readUser(rs).toMap());
+                }
+            }
+        }
+        return totalCount;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,102 @@
+package team.kitemc.verifymc.db;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Users ordered by registration time, newest first, with separate views for pending and non-pending users.
+ * Backed by skip lists so admin pages are read in order without sorting; readers may iterate
+ * concurrently with updates. Updates must be serialized by the owning DAO.
+ */
+class RegTimeIndex {
+    private final ConcurrentSkipListMap<Key, UserRecord> all = new ConcurrentSkipListMap<>();
+    private final ConcurrentSkipListMap<Key, UserRecord> approved = new ConcurrentSkipListMap<>();
+    private final ConcurrentSkipListMap<Key, UserRecord> pending = new ConcurrentSkipListMap<>();
+    // Skip list size() is O(n), keep the counts separately
+    private volatile int approvedCount = 0;
+    private volatile int pendingCount = 0;
+
+    /**
+     * Add a user; a previous version of the same user must be removed first
+     * @param uuid Storage key of the user
+     * @param user User record
+     */
+    void add(String uuid, UserRecord user) {
+        Key key = new Key(user.getRegTime(), uuid);
+        all.put(key, user);
+        if (user.getStatus() == UserStatus.PENDING) {
+            if (pending.put(key, user) == null) pendingCount++;
+        } else {
+            if (approved.put(key, user) == null) approvedCount++;
+        }
+    }
+
+    /**
+     * Remove a user
+     * @param uuid Storage key of the user
+     * @param user User record as it was added
+     */
+    void remove(String uuid, UserRecord user) {
+        Key key = new Key(user.getRegTime(), uuid);
+        all.remove(key);
+        if (pending.remove(key) != null) pendingCount--;
+        if (approved.remove(key) != null) approvedCount--;
+    }
+
+    /**
+     * @return All users, newest first
+     */
+    Collection<UserRecord> all() {
+        return all.values();
+    }
+
+    /**
+     * @return Users that are not pending, newest first
+     */
+    Collection<UserRecord> approved() {
+        return approved.values();
+    }
+
+    /**
+     * @return Pending users, newest first
+     */
+    Collection<UserRecord> pending() {
+        return pending.values();
+    }
+
+    /**
+     * @param cursor Position of the last user already returned
+     * @return Non-pending users after the cursor, newest first
+     */
+    Collection<UserRecord> approvedAfter(UserCursor cursor) {
+        return approved.tailMap(new Key(cursor.getRegTime(), cursor.getUuid()), false).values();
+    }
+
+    int approvedCount() {
+        return approvedCount;
+    }
+
+    int pendingCount() {
+        return pendingCount;
+    }
+
+    /**
+     * Sort key: registration time descending, then UUID descending so equal times stay distinct
+     * (same order as the MySQL keyset queries)
+     */
+    static final class Key implements Comparable<Key> {
+        final long regTime;
+        final String uuid;
+
+        Key(long regTime, String uuid) {
+            this.regTime = regTime;
+            this.uuid = uuid != null ? uuid : "";
+        }
+
+        @Override
+        public int compareTo(Key other) {
+            int cmp = Long.compare(other.regTime, regTime);
+            return cmp != 0 ? cmp : other.uuid.compareTo(uuid);
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package team.kitemc.verifymc.db;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import org.bukkit.plugin.Plugin;
+
+/**
+ * Versioned MySQL schema migrations.
+ * Each component (e.g. "users", "audits") has its own version row in the schema_version table;
+ * on startup only that version is read and the steps above it are applied in order,
+ * each in its own transaction together with the version bump.
+ *
+ * MySQL commits DDL implicitly, so steps must be idempotent: installations created before
+ * versioning start at version 0 and re-run every step against their existing schema.
+ */
+public class SchemaMigrator {
+    /**
+     * One migration step
+     */
+    @FunctionalInterface
+    public interface Step {
+        void apply(Connection conn, Statement stmt) throws SQLException;
+    }
+
+    private static final class Migration {
+        final int version;
+        final String description;
+        final Step step;
+
+        Migration(int version, String description, Step step) {
+            this.version = version;
+            this.description = description;
+            this.step = step;
+        }
+    }
+
+    private final MysqlConnectionPool pool;
+    private final String component;
+    private final Plugin plugin;
+    private final boolean debug;
+    private final List<Migration> migrations = new ArrayList<>();
+
+    /**
+     * @param pool Connection pool
+     * @param component Name of the schema component, used as key in schema_version
+     * @param plugin Plugin instance
+     */
+    public SchemaMigrator(MysqlConnectionPool pool, String component, Plugin plugin) {
+        this.pool = pool;
+        this.component = component;
+        this.plugin = plugin;
+        this.debug = plugin.getConfig().getBoolean("debug", false);
+    }
+
+    private void debugLog(String msg) {
+        if (debug) plugin.getLogger().info("[DEBUG] SchemaMigrator: " + msg);
+    }
+
+    /**
+     * Register a migration step; versions must be added in increasing order
+     * @param version Schema version reached after this step
+     * @param description Short description for the log
+     * @param step Step implementation
+     * @return this migrator
+     */
+    public SchemaMigrator step(int version, String description, Step step) {
+        if (!migrations.isEmpty() && migrations.get(migrations.size() - 1).version >= version) {
+            throw new IllegalArgumentException("Migration versions must increase: " + component + " v" + version);
+        }
+        migrations.add(new Migration(version, description, step));
+        return this;
+    }
+
+    /**
+     * Apply all steps newer than the stored version
+     * @return Schema version after migration
+     * @throws SQLException if a step fails; earlier steps stay applied
+     */
+    public int migrate() throws SQLException {
+        try (Connection conn = pool.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE IF NOT EXISTS schema_version (" +
+                    "component VARCHAR(32) PRIMARY KEY," +
+                    "version INT NOT NULL," +
+                    "updated_at BIGINT)");
+            int current = readVersion(conn, false);
+            int latest = migrations.isEmpty() ? 0 : migrations.get(migrations.size() - 1).version;
+            if (current >= latest) {
+                debugLog(component + " schema is up to date at v" + current);
+                return current;
+            }
+            try (PreparedStatement ps = conn.prepareStatement("INSERT IGNORE INTO schema_version (component, version, updated_at) VALUES (?, 0, ?)")) {
+                ps.setString(1, component);
+                ps.setLong(2, System.currentTimeMillis());
+                ps.executeUpdate();
+            }
+            for (Migration migration : migrations) {
+                if (migration.version <= current) continue;
+                current = apply(conn, stmt, migration);
+            }
+            return current;
+        }
+    }
+
+    /**
+     * Apply one step and bump the version in a single transaction
+     * @return Version after the step
+     */
+    private int apply(Connection conn, Statement stmt, Migration migration) throws SQLException {
+        conn.setAutoCommit(false);
+        try {
+            // Lock the version row so two servers sharing the database do not migrate concurrently
+            int locked = readVersion(conn, true);
+            if (locked >= migration.version) {
+                conn.commit();
+                return locked;
+            }
+            migration.step.apply(conn, stmt);
+            try (PreparedStatement ps = conn.prepareStatement("UPDATE schema_version SET version = ?, updated_at = ? WHERE component = ?")) {
+                ps.setInt(1, migration.version);
+                ps.setLong(2, System.currentTimeMillis());
+                ps.setString(3, component);
+                ps.executeUpdate();
+            }
+            conn.commit();
+            plugin.getLogger().info("[VerifyMC] Applied " + component + " schema migration v" + migration.version + ": " + migration.description);
+            return migration.version;
+        } catch (SQLException e) {
+            try {
+                conn.rollback();
+            } catch (SQLException ignored) {}
+            throw new SQLException("Schema migration " + component + " v" + migration.version + " failed: " + e.getMessage(), e);
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    private int readVersion(Connection conn, boolean forUpdate) throws SQLException {
+        String sql = "SELECT version FROM schema_version WHERE component = ?" + (forUpdate ? " FOR UPDATE" : "");
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, component);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * Check whether a table has a column
+     * @param stmt Statement to use
+     * @param table Table name
+     * @param column Column name
+     * @return true if the column exists
+     * @throws SQLException if the lookup fails
+     */
+    public static boolean columnExists(Statement stmt, String table, String column) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM information_schema.COLUMNS WHERE TABLE_SCHEMA = DATABASE()" +
+                " AND TABLE_NAME = '" + table + "' AND COLUMN_NAME = '" + column + "'")) {
+            return rs.next() && rs.getInt(1) > 0;
+        }
+    }
+
+    /**
+     * Add a column if it does not exist yet
+     * @param stmt Statement to use
+     * @param table Table name
+     * @param column Column name
+     * @param definition Column definition
+     * @return true if the column was added
+     * @throws SQLException if the column cannot be added
+     */
+    public static boolean ensureColumn(Statement stmt, String table, String column, String definition) throws SQLException {
+        if (columnExists(stmt, table, column)) return false;
+        stmt.executeUpdate("ALTER TABLE " + table + " ADD COLUMN " + column + " " + definition);
+        return true;
+    }
+
+    /**
+     * Create an index if it does not exist yet
+     * @param stmt Statement to use
+     * @param table Table name
+     * @param name Index name
+     * @param columns Indexed columns
+     * @throws SQLException if the index cannot be created
+     */
+    public static void ensureIndex(Statement stmt, String table, String name, String columns) throws SQLException {
+        if (!indexExists(stmt, table, name)) {
+            stmt.executeUpdate("CREATE INDEX " + name + " ON " + table + "(" + columns + ")");
+        }
+    }
+
+    /**
+     * Create a FULLTEXT index with the given parser if it does not exist yet.
+     * Stopwords are disabled while the index is built, otherwise the ngram parser drops every token
+     * containing a stopword such as "a" or "i".
+     * @param stmt Statement to use
+     * @param table Table name
+     * @param name Index name
+     * @param columns Indexed columns
+     * @param parser Full-text parser, e.g. "ngram"
+     * @throws SQLException if the index cannot be created
+     */
+    public static void ensureFullTextIndex(Statement stmt, String table, String name, String columns, String parser) throws SQLException {
+        if (indexExists(stmt, table, name)) return;
+        stmt.execute("SET SESSION innodb_ft_enable_stopword = OFF");
+        try {
+            stmt.executeUpdate("CREATE FULLTEXT INDEX " + name + " ON " + table + "(" + columns + ") WITH PARSER " + parser);
+        } finally {
+            stmt.execute("SET SESSION innodb_ft_enable_stopword = ON");
+        }
+    }
+
+    /**
+     * Check whether a table has an index
+     * @param stmt Statement to use
+     * @param table Table name
+     * @param name Index name
+     * @return true if the index exists
+     * @throws SQLException if the lookup fails
+     */
+    public static boolean indexExists(Statement stmt, String table, String name) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery("SHOW INDEX FROM " + table + " WHERE Key_name = '" + name + "'")) {
+            return rs.next();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package team.kitemc.verifymc.db;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+
+/**
+ * Crash-safe whole-file writer.
+ * Content is streamed to a temporary file next to the target, forced to disk and then atomically
+ * renamed over the target, so readers and a crash can only ever observe the old or the new file.
+ * Optionally keeps N previous generations as target.1 (newest) .. target.N (oldest).
+ */
+public final class SnapshotWriter {
+
+    /**
+     * Content producer for a snapshot
+     */
+    @FunctionalInterface
+    public interface Content {
+        void writeTo(Writer writer) throws IOException;
+    }
+
+    private SnapshotWriter() {
+    }
+
+    /**
+     * Write a snapshot without keeping previous generations
+     * @param target Target file
+     * @param content Content producer
+     * @throws IOException if the snapshot could not be written; the target is left untouched
+     */
+    public static void write(File target, Content content) throws IOException {
+        write(target, 0, content);
+    }
+
+    /**
+     * Write a snapshot
+     * @param target Target file
+     * @param generations Number of previous generations to keep, 0 to keep none
+     * @param content Content producer
+     * @throws IOException if the snapshot could not be written; the target is left untouched
+     */
+    public static void write(File target, int generations, Content content) throws IOException {
+        Path targetPath = target.toPath().toAbsolutePath();
+        Path dir = targetPath.getParent();
+        if (dir != null) Files.createDirectories(dir);
+        Path temp = targetPath.resolveSibling(targetPath.getFileName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp.toFile())) {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            content.writeTo(writer);
+            writer.flush();
+            out.getFD().sync();
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        if (generations > 0 && Files.exists(targetPath)) {
+            rotate(targetPath, generations);
+        }
+        try {
+            Files.move(temp, targetPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, targetPath, StandardCopyOption.REPLACE_EXISTING);
+        }
+        syncDirectory(dir);
+    }
+
+    /**
+     * Shift previous generations and preserve the current target as generation 1.
+     * The current target stays in place until the new snapshot replaces it.
+     */
+    private static void rotate(Path target, int generations) throws IOException {
+        for (int i = generations - 1; i >= 1; i--) {
+            Path from = generation(target, i);
+            if (Files.exists(from)) {
+                Files.move(from, generation(target, i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Path first = generation(target, 1);
+        Files.deleteIfExists(first);
+        try {
+            // A hard link keeps the old content without copying it
+            Files.createLink(first, target);
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.copy(target, first, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static Path generation(Path target, int index) {
+        return target.resolveSibling(target.getFileName() + "." + index);
+    }
+
+    /**
+     * Make the rename durable; not supported on every platform, so failures are ignored
+     */
+    private static void syncDirectory(Path dir) {
+        if (dir == null) return;
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ignored) {}
+    }
+}
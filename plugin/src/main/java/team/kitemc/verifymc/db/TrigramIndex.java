@@ -0,0 +1,140 @@
+package team.kitemc.verifymc.db;
+
+import java.util.*;
+
+/**
+ * In-memory trigram index over lower-cased username and email, used to answer admin substring search
+ * without scanning every user. Every substring of length 3 or more contains all trigrams of the query,
+ * so the intersection of the query's posting lists is a superset of the matches; callers verify candidates.
+ *
+ * Users get a dense int id, posting lists are sorted int arrays to keep memory low at large user counts.
+ * Ids of removed users are reused, so the id tables stay as large as the peak user count.
+ */
+class TrigramIndex {
+    static final int GRAM = 3;
+
+    private final Map<String, Integer> idByUuid = new HashMap<>();
+    private final List<String> uuidById = new ArrayList<>();
+    // Ids released by remove(), reused before new ids are allocated
+    private final Deque<Integer> freeIds = new ArrayDeque<>();
+    private final Map<Integer, String[]> textsById = new HashMap<>();
+    private final Map<String, IntList> postings = new HashMap<>();
+
+    /**
+     * Index or re-index a user; unchanged text is a no-op
+     * @param uuid User UUID
+     * @param texts Searchable values (username, email), may contain nulls
+     */
+    synchronized void put(String uuid, String... texts) {
+        String[] normalized = new String[texts.length];
+        for (int i = 0; i < texts.length; i++) {
+            normalized[i] = texts[i] != null ? texts[i].toLowerCase(Locale.ROOT) : null;
+        }
+        Integer id = idByUuid.get(uuid);
+        if (id != null) {
+            String[] previous = textsById.get(id);
+            if (previous != null && Arrays.equals(previous, normalized)) return;
+            if (previous != null) unpost(id, previous);
+        } else if (!freeIds.isEmpty()) {
+            id = freeIds.pop();
+            uuidById.set(id, uuid);
+            idByUuid.put(uuid, id);
+        } else {
+            id = uuidById.size();
+            uuidById.add(uuid);
+            idByUuid.put(uuid, id);
+        }
+        textsById.put(id, normalized);
+        for (String gram : grams(normalized)) {
+            postings.computeIfAbsent(gram, g -> new IntList()).insert(id);
+        }
+    }
+
+    /**
+     * Remove a user from the index
+     * @param uuid User UUID
+     */
+    synchronized void remove(String uuid) {
+        Integer id = idByUuid.remove(uuid);
+        if (id == null) return;
+        String[] previous = textsById.remove(id);
+        if (previous != null) unpost(id, previous);
+        // No posting list refers to the id any more, it can be handed to the next new user
+        uuidById.set(id, null);
+        freeIds.push(id);
+    }
+
+    /**
+     * Find users whose indexed text may contain the query
+     * @param query Lower-cased query of at least {@link #GRAM} characters
+     * @return UUIDs of candidate users
+     */
+    synchronized List<String> candidates(String query) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM <= query.length(); i++) grams.add(query.substring(i, i + GRAM));
+        List<IntList> lists = new ArrayList<>(grams.size());
+        for (String gram : grams) {
+            IntList list = postings.get(gram);
+            if (list == null) return Collections.emptyList();
+            lists.add(list);
+        }
+        lists.sort(Comparator.comparingInt(list -> list.size));
+        List<String> result = new ArrayList<>();
+        IntList smallest = lists.get(0);
+        outer:
+        for (int i = 0; i < smallest.size; i++) {
+            int id = smallest.values[i];
+            for (int j = 1; j < lists.size(); j++) {
+                if (!lists.get(j).contains(id)) continue outer;
+            }
+            result.add(uuidById.get(id));
+        }
+        return result;
+    }
+
+    private void unpost(int id, String[] texts) {
+        for (String gram : grams(texts)) {
+            IntList list = postings.get(gram);
+            if (list != null && list.delete(id) && list.size == 0) postings.remove(gram);
+        }
+    }
+
+    private static Set<String> grams(String[] texts) {
+        Set<String> grams = new HashSet<>();
+        for (String text : texts) {
+            if (text == null) continue;
+            for (int i = 0; i + GRAM <= text.length(); i++) grams.add(text.substring(i, i + GRAM));
+        }
+        return grams;
+    }
+
+    /**
+     * Sorted, duplicate-free growable int array
+     */
+    private static final class IntList {
+        int[] values = new int[4];
+        int size = 0;
+
+        void insert(int value) {
+            int pos = Arrays.binarySearch(values, 0, size, value);
+            if (pos >= 0) return;
+            pos = -pos - 1;
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            System.arraycopy(values, pos, values, pos + 1, size - pos);
+            values[pos] = value;
+            size++;
+        }
+
+        boolean delete(int value) {
+            int pos = Arrays.binarySearch(values, 0, size, value);
+            if (pos < 0) return false;
+            System.arraycopy(values, pos + 1, values, pos, size - pos - 1);
+            size--;
+            return true;
+        }
+
+        boolean contains(int value) {
+            return Arrays.binarySearch(values, 0, size, value) >= 0;
+        }
+    }
+}
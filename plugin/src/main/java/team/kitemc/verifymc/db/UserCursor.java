@@ -0,0 +1,64 @@
+package team.kitemc.verifymc.db;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+
+/**
+ * Keyset pagination position in the user list (ordered by regTime, then uuid, both descending).
+ * Serialized as an opaque URL-safe token for the web API.
+ */
+public final class UserCursor {
+    private final long regTime;
+    private final String uuid;
+
+    public UserCursor(long regTime, String uuid) {
+        this.regTime = regTime;
+        this.uuid = uuid != null ? uuid : "";
+    }
+
+    public long getRegTime() {
+        return regTime;
+    }
+
+    public String getUuid() {
+        return uuid;
+    }
+
+    /**
+     * Cursor pointing after the given user
+     * @param user User data map as returned by UserDao
+     * @return Cursor, or null if user is null
+     */
+    public static UserCursor after(Map<String, Object> user) {
+        if (user == null) return null;
+        Object uuid = user.get("uuid");
+        return new UserCursor(UserRecord.parseRegTime(user.get("regTime")), uuid != null ? uuid.toString() : null);
+    }
+
+    /**
+     * Encode as an opaque token
+     * @return URL-safe token
+     */
+    public String encode() {
+        String raw = regTime + ":" + uuid;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decode a token created by {@link #encode()}
+     * @param token Token, may be null
+     * @return Cursor, or null if the token is blank or invalid
+     */
+    public static UserCursor decode(String token) {
+        if (token == null || token.trim().isEmpty()) return null;
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token.trim()), StandardCharsets.UTF_8);
+            int sep = raw.indexOf(':');
+            if (sep <= 0) return null;
+            return new UserCursor(Long.parseLong(raw.substring(0, sep)), raw.substring(sep + 1));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package team.kitemc.verifymc.db;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -33,6 +34,14 @@ public interface UserDao {
      */
     boolean updateUserStatus(String uuidOrName, String status);
     
+    /**
+     * Update the status of several users at once, in a single transaction or storage flush
+     * @param uuids User UUIDs; unknown UUIDs are skipped
+     * @param status New status
+     * @return Updated users, with their new status
+     */
+    List<Map<String, Object>> updateUserStatuses(Collection<String> uuids, String status);
+    
     /**
      * Update user password
      * @param uuidOrName User UUID or username
@@ -107,6 +116,27 @@ public interface UserDao {
      */
     List<Map<String, Object>> getApprovedUsersWithPaginationAndSearch(int page, int pageSize, String searchQuery);
     
+    /**
+     * Get approved users after a keyset cursor (excluding pending users), newest first.
+     * Unlike offset pagination the cost does not grow with the page depth.
+     * @param after Position of the last user of the previous page, null for the first page
+     * @param pageSize Number of users per page
+     * @param searchQuery Search query for username or email, null or empty for no filter
+     * @return List of approved users following the cursor
+     */
+    List<Map<String, Object>> getApprovedUsersAfter(UserCursor after, int pageSize, String searchQuery);
+    
+    /**
+     * Get one page of approved users (excluding pending users) together with the total matching count,
+     * computed in a single pass/query instead of a page query plus a count query
+     * @param page Page number (starting from 1), ignored when a cursor is given
+     * @param pageSize Number of users per page
+     * @param searchQuery Search query for username or email, null or empty for no filter
+     * @param after Keyset cursor of the previous page, null to use the page number
+     * @return Page of users and total count of approved users matching the search
+     */
+    UserPage getApprovedUsersPage(int page, int pageSize, String searchQuery, UserCursor after);
+    
     /**
      * Get user by UUID
      * @param uuid User UUID
@@ -133,6 +163,11 @@ public interface UserDao {
      */
     void save();
     
+    /**
+     * Flush pending writes and release storage resources
+     */
+    void close();
+    
     /**
      * Count users by email
      * @param email Email address
@@ -0,0 +1,31 @@
+package team.kitemc.verifymc.db;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One page of users together with the total number of matching users
+ */
+public final class UserPage {
+    private final List<Map<String, Object>> users;
+    private final int totalCount;
+
+    public UserPage(List<Map<String, Object>> users, int totalCount) {
+        this.users = users;
+        this.totalCount = totalCount;
+    }
+
+    /**
+     * @return Users on this page
+     */
+    public List<Map<String, Object>> getUsers() {
+        return users;
+    }
+
+    /**
+     * @return Number of users matching the filter across all pages
+     */
+    public int getTotalCount() {
+        return totalCount;
+    }
+}
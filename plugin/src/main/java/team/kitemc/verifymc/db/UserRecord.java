@@ -0,0 +1,241 @@
+package team.kitemc.verifymc.db;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Immutable stored user.
+ * DAOs keep users as records internally and convert them with {@link #toMap()} at the UserDao boundary.
+ * A status outside {@link UserStatus} and fields this version does not know are kept as stored,
+ * so rewriting users.json does not lose data written by another version.
+ */
+public final class UserRecord {
+    private static final Gson GSON = new Gson();
+    private static final Set<String> KNOWN_FIELDS = new HashSet<>(
+            Arrays.asList("uuid", "username", "email", "status", "password", "regTime"));
+
+    private final String uuid;
+    private final String username;
+    private final String email;
+    private final UserStatus status;
+    private final String statusValue;
+    private final String password;
+    private final long regTime;
+    private final Map<String, JsonElement> extraFields;
+
+    public UserRecord(String uuid, String username, String email, UserStatus status, String password, long regTime) {
+        this(uuid, username, email, status != null ? status.getValue() : null, password, regTime, null);
+    }
+
+    /**
+     * @param status Status string, known statuses are normalized to lower case and unknown ones are kept as given
+     */
+    public UserRecord(String uuid, String username, String email, String status, String password, long regTime) {
+        this(uuid, username, email, status, password, regTime, null);
+    }
+
+    private UserRecord(String uuid, String username, String email, String status, String password, long regTime,
+                       Map<String, JsonElement> extraFields) {
+        this.uuid = uuid;
+        this.username = username;
+        this.email = email;
+        this.status = UserStatus.fromValue(status);
+        this.statusValue = this.status != null ? this.status.getValue() : status;
+        this.password = password;
+        this.regTime = regTime;
+        this.extraFields = extraFields != null ? extraFields : Collections.emptyMap();
+    }
+
+    public String getUuid() {
+        return uuid;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    /**
+     * @return Known status, null if the stored status is missing or unknown
+     */
+    public UserStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * @return Status string as stored, including unknown statuses
+     */
+    public String getStatusValue() {
+        return statusValue;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    public long getRegTime() {
+        return regTime;
+    }
+
+    /**
+     * Copy of this record with another status
+     * @param status New status
+     * @return Updated record
+     */
+    public UserRecord withStatus(UserStatus status) {
+        return withStatus(status != null ? status.getValue() : null);
+    }
+
+    /**
+     * Copy of this record with another status
+     * @param status New status string
+     * @return Updated record
+     */
+    public UserRecord withStatus(String status) {
+        return new UserRecord(uuid, username, email, status, password, regTime, extraFields);
+    }
+
+    /**
+     * Copy of this record with another password
+     * @param password New password
+     * @return Updated record
+     */
+    public UserRecord withPassword(String password) {
+        return new UserRecord(uuid, username, email, statusValue, password, regTime, extraFields);
+    }
+
+    /**
+     * Convert to the map representation used by the UserDao API.
+     * The returned map is a fresh copy, changing it does not affect storage.
+     * @return User data map
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> user = new HashMap<>(8);
+        user.put("uuid", uuid);
+        user.put("username", username);
+        user.put("email", email);
+        user.put("status", statusValue);
+        user.put("password", password);
+        user.put("regTime", regTime);
+        return user;
+    }
+
+    /**
+     * Create a record from the map representation
+     * @param uuid UUID to use when the map has none
+     * @param user User data map
+     * @return User record
+     */
+    public static UserRecord fromMap(String uuid, Map<String, ?> user) {
+        Object storedUuid = user.get("uuid");
+        return new UserRecord(
+                storedUuid != null ? storedUuid.toString() : uuid,
+                stringValue(user.get("username")),
+                stringValue(user.get("email")),
+                stringValue(user.get("status")),
+                stringValue(user.get("password")),
+                parseRegTime(user.get("regTime")));
+    }
+
+    /**
+     * Write the record as a JSON object in the users.json format; null fields are omitted, unknown fields are written back
+     * @param writer JSON writer
+     * @throws IOException if writing fails
+     */
+    void writeJson(JsonWriter writer) throws IOException {
+        writer.beginObject();
+        writeField(writer, "uuid", uuid);
+        writeField(writer, "username", username);
+        writeField(writer, "email", email);
+        writeField(writer, "status", statusValue);
+        writeField(writer, "password", password);
+        writer.name("regTime").value(regTime);
+        for (Map.Entry<String, JsonElement> field : extraFields.entrySet()) {
+            writer.name(field.getKey());
+            GSON.toJson(field.getValue(), writer);
+        }
+        writer.endObject();
+    }
+
+    /**
+     * Read a record from a JSON object in the users.json format
+     * @param reader JSON reader positioned at the object
+     * @param uuid UUID to use when the object has none
+     * @param upgraded Set to true in slot 0 if legacy fields were missing
+     * @return User record
+     * @throws IOException if the JSON is malformed
+     */
+    static UserRecord readJson(JsonReader reader, String uuid, boolean[] upgraded) throws IOException {
+        String storedUuid = null, username = null, email = null, status = null, password = null;
+        Long regTime = null;
+        Map<String, JsonElement> extraFields = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (!KNOWN_FIELDS.contains(name)) {
+                if (extraFields == null) extraFields = new LinkedHashMap<>();
+                extraFields.put(name, JsonParser.parseReader(reader));
+                continue;
+            }
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "uuid": storedUuid = reader.nextString(); break;
+                case "username": username = reader.nextString(); break;
+                case "email": email = reader.nextString(); break;
+                case "status": status = reader.nextString(); break;
+                case "password": password = reader.nextString(); break;
+                case "regTime": regTime = parseRegTime(reader.nextString()); break;
+            }
+        }
+        reader.endObject();
+        if (storedUuid == null || regTime == null) upgraded[0] = true;
+        return new UserRecord(storedUuid != null ? storedUuid : uuid, username, email,
+                status, password, regTime != null ? regTime : System.currentTimeMillis(), extraFields);
+    }
+
+    private static void writeField(JsonWriter writer, String name, String value) throws IOException {
+        if (value != null) writer.name(name).value(value);
+    }
+
+    private static String stringValue(Object value) {
+        return value != null ? value.toString() : null;
+    }
+
+    /**
+     * Convert a stored regTime (Long, Double from older Gson output, or String) to milliseconds
+     * @param value Stored value
+     * @return Registration time, 0 if it cannot be parsed
+     */
+    static long parseRegTime(Object value) {
+        if (value instanceof Number) return ((Number) value).longValue();
+        if (value == null) return 0L;
+        String text = value.toString();
+        try {
+            return Long.parseLong(text);
+        } catch (NumberFormatException e) {
+            try {
+                return (long) Double.parseDouble(text);
+            } catch (NumberFormatException ignored) {
+                return 0L;
+            }
+        }
+    }
+}
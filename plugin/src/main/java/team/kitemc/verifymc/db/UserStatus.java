@@ -0,0 +1,48 @@
+package team.kitemc.verifymc.db;
+
+import java.util.Locale;
+
+/**
+ * Review status of a user
+ */
+public enum UserStatus {
+    PENDING("pending"),
+    APPROVED("approved"),
+    REJECTED("rejected"),
+    BANNED("banned");
+
+    private final String value;
+
+    UserStatus(String value) {
+        this.value = value;
+    }
+
+    /**
+     * Get the value used in storage and the web API
+     * @return Lower-case status string
+     */
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * Parse a stored status string
+     * @param value Status string (case-insensitive)
+     * @return Matching status, or null if the value is null or unknown
+     */
+    public static UserStatus fromValue(String value) {
+        if (value == null) return null;
+        switch (value.toLowerCase(Locale.ROOT)) {
+            case "pending": return PENDING;
+            case "approved": return APPROVED;
+            case "rejected": return REJECTED;
+            case "banned": return BANNED;
+            default: return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return value;
+    }
+}
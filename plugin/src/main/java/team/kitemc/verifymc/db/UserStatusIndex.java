@@ -0,0 +1,182 @@
+package team.kitemc.verifymc.db;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * In-memory, case-insensitive username to status index.
+ * Used by the login listener so that a join does not have to scan the whole user storage.
+ */
+public class UserStatusIndex {
+    /**
+     * Index content; a rebuild fills a fresh instance and swaps it in as a whole
+     */
+    private static final class Maps {
+        final ConcurrentHashMap<String, Entry> byName = new ConcurrentHashMap<>();
+        final ConcurrentHashMap<String, String> nameByUuid = new ConcurrentHashMap<>();
+    }
+
+    private volatile Maps maps = new Maps();
+    // Names changed while a rebuild loads from storage, null when no rebuild is running
+    private volatile Set<String> touched;
+    // Mutations share the read lock; the swap at the end of a rebuild takes the write lock
+    private final ReentrantReadWriteLock swapLock = new ReentrantReadWriteLock();
+
+    /**
+     * Add or replace a user in the index
+     * @param uuid User UUID
+     * @param username Username
+     * @param status User status
+     */
+    public void put(String uuid, String username, String status) {
+        if (username == null) return;
+        swapLock.readLock().lock();
+        try {
+            String key = put(maps, uuid, username, status);
+            markTouched(key);
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    private static String put(Maps maps, String uuid, String username, String status) {
+        String key = normalize(username);
+        Entry entry = new Entry(uuid, status);
+        // Legacy data may contain several accounts differing only by case, keep the approved one
+        Entry kept = maps.byName.merge(key, entry, (old, cur) ->
+                "approved".equals(old.status) && !"approved".equals(cur.status) && old.uuid != null && !old.uuid.equals(cur.uuid) ? old : cur);
+        if (kept == entry && uuid != null) maps.nameByUuid.put(uuid, key);
+        return key;
+    }
+
+    /**
+     * Update status of an indexed user
+     * @param uuidOrName User UUID or username
+     * @param status New status
+     */
+    public void updateStatus(String uuidOrName, String status) {
+        if (uuidOrName == null) return;
+        swapLock.readLock().lock();
+        try {
+            Maps current = maps;
+            String key = resolveKey(current, uuidOrName);
+            current.byName.computeIfPresent(key, (k, old) -> new Entry(old.uuid, status));
+            markTouched(key);
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Remove a user from the index
+     * @param uuidOrName User UUID or username
+     */
+    public void remove(String uuidOrName) {
+        if (uuidOrName == null) return;
+        swapLock.readLock().lock();
+        try {
+            Maps current = maps;
+            String key = resolveKey(current, uuidOrName);
+            Entry removed = current.byName.remove(key);
+            if (removed != null && removed.uuid != null) current.nameByUuid.remove(removed.uuid);
+            current.nameByUuid.remove(uuidOrName);
+            markTouched(key);
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    private void markTouched(String key) {
+        Set<String> keys = touched;
+        if (keys != null) keys.add(key);
+    }
+
+    /**
+     * Get indexed status of a username
+     * @param username Username (case-insensitive)
+     * @return Status, or null if the username is not indexed
+     */
+    public String getStatus(String username) {
+        if (username == null) return null;
+        Entry entry = maps.byName.get(normalize(username));
+        return entry != null ? entry.status : null;
+    }
+
+    /**
+     * Check whether a username is indexed
+     * @param username Username (case-insensitive)
+     * @return true if the username is indexed
+     */
+    public boolean contains(String username) {
+        return username != null && maps.byName.containsKey(normalize(username));
+    }
+
+    /**
+     * Replace the index content with the users from storage.
+     * Lookups keep using the old content until the new one is complete, and changes made
+     * through this index while storage is being read are carried over into the new content.
+     * @param loader Loads all users from storage
+     */
+    public synchronized void rebuild(Supplier<List<Map<String, Object>>> loader) {
+        touched = ConcurrentHashMap.newKeySet();
+        try {
+            Maps fresh = new Maps();
+            for (Map<String, Object> user : loader.get()) {
+                Object username = user.get("username");
+                if (username == null) continue;
+                Object uuid = user.get("uuid");
+                Object status = user.get("status");
+                put(fresh, uuid != null ? uuid.toString() : null, username.toString(), status != null ? status.toString() : null);
+            }
+            swapLock.writeLock().lock();
+            try {
+                Maps current = maps;
+                for (String key : touched) {
+                    Entry stale = fresh.byName.remove(key);
+                    if (stale != null && stale.uuid != null) fresh.nameByUuid.remove(stale.uuid, key);
+                    Entry entry = current.byName.get(key);
+                    if (entry == null) continue;
+                    fresh.byName.put(key, entry);
+                    if (entry.uuid != null) fresh.nameByUuid.put(entry.uuid, key);
+                }
+                maps = fresh;
+            } finally {
+                swapLock.writeLock().unlock();
+            }
+        } finally {
+            touched = null;
+        }
+    }
+
+    /**
+     * Get number of indexed usernames
+     * @return Index size
+     */
+    public int size() {
+        return maps.byName.size();
+    }
+
+    private static String resolveKey(Maps maps, String uuidOrName) {
+        String key = maps.nameByUuid.get(uuidOrName);
+        return key != null ? key : normalize(uuidOrName);
+    }
+
+    private static String normalize(String username) {
+        return username.toLowerCase(Locale.ROOT);
+    }
+
+    private static final class Entry {
+        final String uuid;
+        final String status;
+
+        Entry(String uuid, String status) {
+            this.uuid = uuid;
+            this.status = status;
+        }
+    }
+}
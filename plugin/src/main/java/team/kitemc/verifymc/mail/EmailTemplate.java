@@ -0,0 +1,98 @@
+package team.kitemc.verifymc.mail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Email template split once into static segments and placeholders, so rendering is a single
+ * pre-sized StringBuilder pass instead of a String.replace per placeholder.
+ * Placeholders look like {name} with lower-case letters and underscores only, which leaves CSS blocks untouched.
+ * Placeholders without a value are rendered unchanged; {@link #renderHtml(Map)} escapes the values it inserts.
+ */
+class EmailTemplate {
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\{([a-z_]+)\\}");
+
+    // literals.length == names.length + 1, output is literals[0] names[0] literals[1] ... literals[n]
+    private final String[] literals;
+    private final String[] names;
+    private final int staticLength;
+
+    private EmailTemplate(String[] literals, String[] names) {
+        this.literals = literals;
+        this.names = names;
+        int length = 0;
+        for (String literal : literals) length += literal.length();
+        this.staticLength = length;
+    }
+
+    /**
+     * Parse template source
+     * @param source Template text
+     * @return Compiled template
+     */
+    static EmailTemplate compile(String source) {
+        List<String> literals = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        Matcher m = PLACEHOLDER.matcher(source);
+        int last = 0;
+        while (m.find()) {
+            literals.add(source.substring(last, m.start()));
+            names.add(m.group(1));
+            last = m.end();
+        }
+        literals.add(source.substring(last));
+        return new EmailTemplate(literals.toArray(new String[0]), names.toArray(new String[0]));
+    }
+
+    /**
+     * Render the template as plain text, e.g. a subject
+     * @param values Placeholder values by name
+     * @return Rendered text
+     */
+    String render(Map<String, String> values) {
+        return render(values, false);
+    }
+
+    /**
+     * Render the template as HTML, placeholder values are escaped
+     * @param values Placeholder values by name
+     * @return Rendered HTML
+     */
+    String renderHtml(Map<String, String> values) {
+        return render(values, true);
+    }
+
+    private String render(Map<String, String> values, boolean html) {
+        if (names.length == 0) return literals[0];
+        StringBuilder sb = new StringBuilder(staticLength + names.length * 16);
+        for (int i = 0; i < names.length; i++) {
+            sb.append(literals[i]);
+            String value = values.get(names[i]);
+            if (value == null) {
+                sb.append('{').append(names[i]).append('}');
+            } else if (html) {
+                appendEscaped(sb, value);
+            } else {
+                sb.append(value);
+            }
+        }
+        return sb.append(literals[names.length]).toString();
+    }
+
+    private static void appendEscaped(StringBuilder sb, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '&': sb.append("&amp;"); break;
+                case '<': sb.append("&lt;"); break;
+                case '>': sb.append("&gt;"); break;
+                case '"': sb.append("&quot;"); break;
+                case '\'': sb.append("&#39;"); break;
+                default: sb.append(c); break;
+            }
+        }
+    }
+}
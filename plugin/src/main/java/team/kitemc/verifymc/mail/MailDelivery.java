@@ -0,0 +1,97 @@
+package team.kitemc.verifymc.mail;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * One email in the outbox and its delivery state
+ */
+public class MailDelivery {
+    public enum Status { QUEUED, SENDING, RETRYING, SENT, FAILED }
+
+    private final String id = UUID.randomUUID().toString();
+    private final String to;
+    private final String subject;
+    private final String content;
+    private final long createdAt = System.currentTimeMillis();
+    private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+    private volatile Status status = Status.QUEUED;
+    private volatile int attempts = 0;
+    private volatile String lastError;
+    private volatile long completedAt = 0;
+
+    MailDelivery(String to, String subject, String content) {
+        this.to = to;
+        this.subject = subject;
+        this.content = content;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getTo() {
+        return to;
+    }
+
+    String getSubject() {
+        return subject;
+    }
+
+    String getContent() {
+        return content;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * @return Message of the last failed attempt, null if none failed
+     */
+    public String getLastError() {
+        return lastError;
+    }
+
+    long getCreatedAt() {
+        return createdAt;
+    }
+
+    long getCompletedAt() {
+        return completedAt;
+    }
+
+    /**
+     * @return Future completed with true when sent, false when delivery finally failed
+     */
+    public CompletableFuture<Boolean> getResult() {
+        return result;
+    }
+
+    void startAttempt() {
+        attempts++;
+        status = Status.SENDING;
+    }
+
+    void retrying(String error) {
+        lastError = error;
+        status = Status.RETRYING;
+    }
+
+    void sent() {
+        status = Status.SENT;
+        completedAt = System.currentTimeMillis();
+        result.complete(true);
+    }
+
+    void failed(String error) {
+        lastError = error;
+        status = Status.FAILED;
+        completedAt = System.currentTimeMillis();
+        result.complete(false);
+    }
+}
@@ -0,0 +1,283 @@
+package team.kitemc.verifymc.mail;
+
+import jakarta.mail.*;
+import jakarta.mail.internet.AddressException;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import org.bukkit.plugin.Plugin;
+
+/**
+ * Bounded mail queue drained by worker threads.
+ * Each worker keeps its own connected Transport and reuses it for consecutive messages,
+ * closing it after the configured idle time. Transient failures are retried with exponential backoff;
+ * invalid recipients and authentication errors fail immediately.
+ */
+class MailOutbox {
+    // Finished deliveries stay queryable for this long
+    private static final long STATUS_RETENTION_MILLIS = 10 * 60 * 1000;
+    private static final long POLL_MILLIS = 500;
+    // Upper bound of the retry delay; the shift is capped too so the backoff cannot overflow
+    private static final long MAX_RETRY_DELAY_MILLIS = 5 * 60 * 1000;
+    private static final int MAX_BACKOFF_SHIFT = 30;
+
+    private final Plugin plugin;
+    private final boolean debug;
+    private final Session session;
+    private final String from;
+    private final int maxAttempts;
+    private final long retryBackoffMillis;
+    private final long idleCloseMillis;
+    private final BlockingQueue<MailDelivery> queue;
+    private final ConcurrentHashMap<String, MailDelivery> deliveries = new ConcurrentHashMap<>();
+    // Deliveries waiting for their retry delay; whoever removes one (retry task or shutdown) owns it
+    private final Set<MailDelivery> pendingRetries = ConcurrentHashMap.newKeySet();
+    private final List<Thread> workers = new ArrayList<>();
+    private final ScheduledThreadPoolExecutor scheduler;
+    private volatile boolean accepting = true;
+    private final AtomicLong sentCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong retryCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong connectCount = new AtomicLong();
+
+    MailOutbox(Plugin plugin, Session session, String from) {
+        this.plugin = plugin;
+        this.debug = plugin.getConfig().getBoolean("debug", false);
+        this.session = session;
+        this.from = from;
+        this.maxAttempts = Math.max(1, plugin.getConfig().getInt("smtp.outbox.max_attempts", 3));
+        this.retryBackoffMillis = Math.min(MAX_RETRY_DELAY_MILLIS, Math.max(0, plugin.getConfig().getLong("smtp.outbox.retry_backoff_ms", 2000)));
+        this.idleCloseMillis = Math.max(1000, plugin.getConfig().getLong("smtp.outbox.idle_close_ms", 30000));
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, plugin.getConfig().getInt("smtp.outbox.queue_capacity", 500)));
+        int workerCount = Math.max(1, plugin.getConfig().getInt("smtp.outbox.workers", 2));
+
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, task -> {
+            Thread thread = new Thread(task, "VerifyMC-MailRetry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        executor.scheduleWithFixedDelay(this::expireDeliveries, 1, 1, TimeUnit.MINUTES);
+        this.scheduler = executor;
+
+        for (int i = 1; i <= workerCount; i++) {
+            Thread worker = new Thread(this::runWorker, "VerifyMC-Mail-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+    }
+
+    private void debugLog(String msg) {
+        if (debug) plugin.getLogger().info("[DEBUG] MailOutbox: " + msg);
+    }
+
+    /**
+     * Queue an HTML email
+     * @param to Recipient address
+     * @param subject Subject
+     * @param content HTML body
+     * @return Delivery handle, or null if the outbox is full or shut down
+     */
+    MailDelivery submit(String to, String subject, String content) {
+        MailDelivery delivery = new MailDelivery(to, subject, content);
+        if (!accepting || !queue.offer(delivery)) {
+            rejectedCount.incrementAndGet();
+            return null;
+        }
+        deliveries.put(delivery.getId(), delivery);
+        return delivery;
+    }
+
+    /**
+     * @param id Delivery id
+     * @return Delivery, or null if unknown or expired
+     */
+    MailDelivery getDelivery(String id) {
+        return id != null ? deliveries.get(id) : null;
+    }
+
+    private void runWorker() {
+        Transport transport = null;
+        long lastUsed = System.currentTimeMillis();
+        try {
+            while (accepting || !queue.isEmpty()) {
+                MailDelivery delivery;
+                try {
+                    // Short poll so shutdown is noticed quickly
+                    delivery = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                if (delivery == null) {
+                    // Idle: release the SMTP connection instead of keeping it open until the server drops it
+                    if (transport != null && System.currentTimeMillis() - lastUsed >= idleCloseMillis) {
+                        transport = close(transport);
+                        debugLog(Thread.currentThread().getName() + " closed idle SMTP connection");
+                    }
+                    continue;
+                }
+                try {
+                    transport = deliver(delivery, transport);
+                } catch (RuntimeException e) {
+                    // Unexpected error: fail this mail and keep the worker running with a fresh connection
+                    transport = close(transport);
+                    delivery.failed(e.toString());
+                    failedCount.incrementAndGet();
+                    plugin.getLogger().warning("[VerifyMC] Unexpected error sending mail " + delivery.getId() + ": " + e);
+                }
+                lastUsed = System.currentTimeMillis();
+            }
+        } finally {
+            close(transport);
+        }
+    }
+
+    /**
+     * Send one delivery attempt over the worker's transport
+     * @return Transport to use for the next message, null if it had to be closed
+     */
+    private Transport deliver(MailDelivery delivery, Transport transport) {
+        delivery.startAttempt();
+        try {
+            Message message = new MimeMessage(session);
+            message.setFrom(new InternetAddress(from));
+            message.setRecipients(Message.RecipientType.TO, InternetAddress.parse(delivery.getTo()));
+            message.setSubject(delivery.getSubject());
+            message.setContent(delivery.getContent(), "text/html; charset=utf-8");
+            // Transport.send() does this implicitly, sendMessage() does not
+            message.saveChanges();
+
+            if (transport == null) {
+                transport = session.getTransport("smtp");
+            }
+            if (!transport.isConnected()) {
+                transport.connect();
+                connectCount.incrementAndGet();
+            }
+            transport.sendMessage(message, message.getAllRecipients());
+            delivery.sent();
+            sentCount.incrementAndGet();
+            debugLog("Sent mail " + delivery.getId() + " to " + delivery.getTo() + " (attempt " + delivery.getAttempts() + ")");
+            return transport;
+        } catch (MessagingException e) {
+            // The connection state is unknown after an error, start with a fresh one
+            transport = close(transport);
+            if (isPermanent(e) || delivery.getAttempts() >= maxAttempts || !accepting) {
+                delivery.failed(e.getMessage());
+                failedCount.incrementAndGet();
+                debugLog("Giving up on mail " + delivery.getId() + " to " + delivery.getTo() + " after " + delivery.getAttempts() + " attempt(s): " + e.getMessage());
+            } else {
+                long delay = Math.min(MAX_RETRY_DELAY_MILLIS, retryBackoffMillis << Math.min(delivery.getAttempts() - 1, MAX_BACKOFF_SHIFT));
+                delivery.retrying(e.getMessage());
+                retryCount.incrementAndGet();
+                debugLog("Retrying mail " + delivery.getId() + " in " + delay + "ms: " + e.getMessage());
+                scheduleRetry(delivery, delay);
+            }
+            return transport;
+        }
+    }
+
+    private void scheduleRetry(MailDelivery delivery, long delayMillis) {
+        pendingRetries.add(delivery);
+        try {
+            scheduler.schedule(() -> {
+                if (!pendingRetries.remove(delivery)) return;
+                if (!accepting || !queue.offer(delivery)) {
+                    delivery.failed(accepting ? "Mail queue is full" : "Mail service stopped");
+                    failedCount.incrementAndGet();
+                }
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            if (pendingRetries.remove(delivery)) {
+                delivery.failed("Mail service stopped");
+                failedCount.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Failures that a retry cannot fix
+     */
+    private static boolean isPermanent(MessagingException e) {
+        if (e instanceof AuthenticationFailedException || e instanceof AddressException) return true;
+        if (e instanceof SendFailedException) {
+            Address[] invalid = ((SendFailedException) e).getInvalidAddresses();
+            return invalid != null && invalid.length > 0;
+        }
+        return false;
+    }
+
+    private Transport close(Transport transport) {
+        if (transport != null) {
+            try {
+                transport.close();
+            } catch (MessagingException | RuntimeException ignored) {}
+        }
+        return null;
+    }
+
+    private void expireDeliveries() {
+        long cutoff = System.currentTimeMillis() - STATUS_RETENTION_MILLIS;
+        deliveries.values().removeIf(d -> d.getCompletedAt() > 0 ? d.getCompletedAt() < cutoff : d.getCreatedAt() < cutoff - STATUS_RETENTION_MILLIS);
+    }
+
+    /**
+     * Stop accepting mail, give the workers a few seconds to drain the queue, then stop them.
+     * Deliveries still waiting for a retry or left in the queue are failed so their callers are not left waiting.
+     */
+    void shutdown() {
+        accepting = false;
+        scheduler.shutdownNow();
+        for (MailDelivery delivery : pendingRetries) {
+            if (pendingRetries.remove(delivery)) {
+                delivery.failed("Mail service stopped");
+                failedCount.incrementAndGet();
+            }
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        for (Thread worker : workers) {
+            try {
+                worker.join(Math.max(1, deadline - System.currentTimeMillis()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        for (Thread worker : workers) worker.interrupt();
+        MailDelivery left;
+        while ((left = queue.poll()) != null) {
+            left.failed("Mail service stopped");
+            failedCount.incrementAndGet();
+        }
+    }
+
+    int getQueueDepth() {
+        return queue.size();
+    }
+
+    long getSentCount() {
+        return sentCount.get();
+    }
+
+    long getFailedCount() {
+        return failedCount.get();
+    }
+
+    long getRetryCount() {
+        return retryCount.get();
+    }
+
+    long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    long getConnectCount() {
+        return connectCount.get();
+    }
+}
@@ -3,21 +3,31 @@ package team.kitemc.verifymc.mail;
 import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.plugin.Plugin;
 import jakarta.mail.*;
-import jakarta.mail.internet.InternetAddress;
-import jakarta.mail.internet.MimeMessage;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.BiFunction;
 import java.nio.file.Files;
-import java.nio.file.Path;
+import java.time.LocalDate;
 import java.nio.charset.StandardCharsets;
 import java.io.File;
+import org.json.JSONObject;
 
 public class MailService {
     private final Plugin plugin;
     private final BiFunction<String, String, String> getMessage;
     private Session session;
     private String from;
+    private MailOutbox outbox;
     private final boolean debug;
+    private static final String DEFAULT_TEMPLATE = "<html><body><h2>NTART验证代码</h2><p>代码: <strong>{code}</strong></p></body></html>";
+    private static final EmailTemplate DEFAULT_COMPILED = EmailTemplate.compile(DEFAULT_TEMPLATE);
+    // Compiled templates by language, reloaded when the file's modification time changes
+    private final ConcurrentHashMap<String, CachedTemplate> templates = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, EmailTemplate> subjects = new ConcurrentHashMap<>();
+    private volatile String language;
+    private volatile String serverName;
 
     private void debugLog(String msg) {
         if (debug) plugin.getLogger().info("[DEBUG] MailService: " + msg);
@@ -42,6 +52,8 @@ public class MailService {
         String password = config.getString("smtp.password");
         from = config.getString("smtp.from", username);
         boolean enableSsl = config.getBoolean("smtp.enable_ssl", true);
+        language = config.getString("language", "en");
+        serverName = config.getString("web_server_prefix", "");
         
         debugLog("SMTP Configuration: host=" + host + ", port=" + port + ", username=" + username + ", enableSsl=" + enableSsl);
 
@@ -63,51 +75,117 @@ public class MailService {
                 return new PasswordAuthentication(username, password);
             }
         });
+        outbox = new MailOutbox(plugin, session, from);
         debugLog("MailService initialized successfully");
     }
 
     /**
-     * Send verification code email
+     * Queue verification code email for background delivery.
+     * Template and subject placeholders: {code}, {email}, {server_name}, {expire_minutes}, {date}
      * @param to Recipient email address
      * @param subject Email subject
      * @param code Verification code
-     * @return true if email sent successfully
+     * @param expireMinutes Code lifetime for the {expire_minutes} placeholder
+     * @return Delivery handle, or null if the template could not be rendered or the mail queue is full
      */
-    public boolean sendCode(String to, String subject, String code) {
-        debugLog("sendCode called: to=" + to + ", subject=" + subject + ", code=" + code);
+    public MailDelivery sendCodeAsync(String to, String subject, String code, long expireMinutes) {
+        debugLog("sendCodeAsync called: to=" + to + ", subject=" + subject + ", code=" + code);
+        String lang = language;
         try {
-            String lang = plugin.getConfig().getString("language", "en");
-            debugLog("Using language: " + lang);
+            Map<String, String> values = new HashMap<>(8);
+            values.put("code", code);
+            values.put("email", to);
+            values.put("server_name", serverName);
+            values.put("expire_minutes", String.valueOf(expireMinutes));
+            values.put("date", LocalDate.now().toString());
+            String content = getTemplate(lang).renderHtml(values);
+            String renderedSubject = subjects.computeIfAbsent(subject, EmailTemplate::compile).render(values);
             
-            // Prioritize loading template from plugins/VerifyMC/email directory
-            File emailDir = new File(plugin.getDataFolder(), "email");
-            File templateFile = new File(emailDir, "verify_code_" + lang + ".html");
-            String content;
-            if (templateFile.exists()) {
-                debugLog("Using custom template: " + templateFile.getAbsolutePath());
-                content = new String(Files.readAllBytes(templateFile.toPath()), StandardCharsets.UTF_8);
-                content = content.replace("{code}", code);
-            } else {
-                debugLog("Using default template");
-                content = "<html><body><h2>NTART验证代码</h2><p>代码: <strong>" + code + "</strong></p></body></html>";
+            MailDelivery delivery = outbox.submit(to, renderedSubject, content);
+            if (delivery == null) {
+                plugin.getLogger().warning(getMessage.apply("email.failed", lang) + ": mail queue is full");
+                return null;
             }
-            
-            debugLog("Creating email message");
-            Message message = new MimeMessage(session);
-            message.setFrom(new InternetAddress(from));
-            message.setRecipients(Message.RecipientType.TO, InternetAddress.parse(to));
-            message.setSubject(subject);
-            message.setContent(content, "text/html; charset=utf-8");
-            
-            debugLog("Sending email");
-            Transport.send(message);
-            debugLog("Email sent successfully");
-            return true;
+            delivery.getResult().thenAccept(sent -> {
+                if (!sent) plugin.getLogger().warning(getMessage.apply("email.failed", lang) + ": " + delivery.getLastError());
+            });
+            debugLog("Email queued: " + delivery.getId());
+            return delivery;
         } catch (Exception e) {
-            String lang = plugin.getConfig().getString("language", "en");
-            debugLog("Failed to send email: " + e.getMessage());
+            debugLog("Failed to queue email: " + e.getMessage());
             plugin.getLogger().warning(getMessage.apply("email.failed", lang) + ": " + e.getMessage());
-            return false;
+            return null;
+        }
+    }
+
+    /**
+     * Get the compiled verification template for a language.
+     * Prioritizes plugins/VerifyMC/email/verify_code_<lang>.html, re-reading it only when its modification time changes.
+     * @param lang Language code
+     * @return Compiled template, the built-in default if no file exists
+     */
+    private EmailTemplate getTemplate(String lang) throws java.io.IOException {
+        File templateFile = new File(new File(plugin.getDataFolder(), "email"), "verify_code_" + lang + ".html");
+        long modified = templateFile.lastModified();
+        if (modified == 0L) {
+            if (templates.remove(lang) != null) debugLog("Template removed, using default: " + templateFile.getAbsolutePath());
+            return DEFAULT_COMPILED;
+        }
+        CachedTemplate cached = templates.get(lang);
+        if (cached != null && cached.modified == modified) return cached.template;
+        debugLog("Loading template: " + templateFile.getAbsolutePath());
+        EmailTemplate template = EmailTemplate.compile(new String(Files.readAllBytes(templateFile.toPath()), StandardCharsets.UTF_8));
+        templates.put(lang, new CachedTemplate(template, modified));
+        return template;
+    }
+
+    /**
+     * Re-read mail settings from config and drop cached templates
+     */
+    public void reload() {
+        FileConfiguration config = plugin.getConfig();
+        language = config.getString("language", "en");
+        serverName = config.getString("web_server_prefix", "");
+        templates.clear();
+        subjects.clear();
+        debugLog("Mail templates reloaded, language=" + language);
+    }
+
+    /**
+     * @param id Delivery id returned by {@link #sendCodeAsync}
+     * @return Delivery, or null if unknown or already expired
+     */
+    public MailDelivery getDelivery(String id) {
+        return outbox.getDelivery(id);
+    }
+
+    /**
+     * @return Outbox depth and delivery counters
+     */
+    public JSONObject getOutboxStats() {
+        return new JSONObject()
+            .put("queueDepth", outbox.getQueueDepth())
+            .put("sent", outbox.getSentCount())
+            .put("failed", outbox.getFailedCount())
+            .put("retried", outbox.getRetryCount())
+            .put("rejected", outbox.getRejectedCount())
+            .put("connections", outbox.getConnectCount());
+    }
+
+    /**
+     * Deliver queued mail for a few seconds, then stop the mail workers
+     */
+    public void shutdown() {
+        outbox.shutdown();
+    }
+
+    private static final class CachedTemplate {
+        final EmailTemplate template;
+        final long modified;
+
+        CachedTemplate(EmailTemplate template, long modified) {
+            this.template = template;
+            this.modified = modified;
         }
     }
-} 
\ No newline at end of file
+}
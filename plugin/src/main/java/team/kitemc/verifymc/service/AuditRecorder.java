@@ -0,0 +1,171 @@
+package team.kitemc.verifymc.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.bukkit.plugin.Plugin;
+import team.kitemc.verifymc.db.AuditDao;
+
+/**
+ * Records audit entries off the request path.
+ * Handlers publish into a bounded ring buffer and return immediately; one consumer thread drains up to
+ * storage.audit.batch_size entries at a time and hands them to {@link AuditDao#addAudits(List)} as one write.
+ * When the buffer is full the overflow policy decides: "caller_runs" writes the entry on the publishing
+ * thread (nothing is lost, the request pays the write), "drop" discards it and counts the loss.
+ */
+public class AuditRecorder {
+    private static final long POLL_MILLIS = 500;
+    private static final long DROP_WARN_INTERVAL_MILLIS = 60_000;
+
+    private final Plugin plugin;
+    private final boolean debug;
+    private final AuditDao auditDao;
+    private final ArrayBlockingQueue<Map<String, Object>> buffer;
+    private final int batchSize;
+    private final boolean dropOnOverflow;
+    private final Thread consumer;
+    private volatile boolean running = true;
+    private volatile long lastDropWarning = 0;
+    private volatile int lastBatchSize = 0;
+    private final AtomicLong publishedCount = new AtomicLong();
+    private final AtomicLong writtenCount = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong callerRunsCount = new AtomicLong();
+
+    public AuditRecorder(Plugin plugin, AuditDao auditDao) {
+        this.plugin = plugin;
+        this.debug = plugin.getConfig().getBoolean("debug", false);
+        this.auditDao = auditDao;
+        this.buffer = new ArrayBlockingQueue<>(Math.max(1, plugin.getConfig().getInt("storage.audit.queue_capacity", 4096)));
+        this.batchSize = Math.max(1, plugin.getConfig().getInt("storage.audit.batch_size", 256));
+        this.dropOnOverflow = "drop".equalsIgnoreCase(plugin.getConfig().getString("storage.audit.overflow_policy", "caller_runs"));
+        this.consumer = new Thread(this::runConsumer, "VerifyMC-Audit");
+        this.consumer.setDaemon(true);
+        this.consumer.start();
+    }
+
+    private void debugLog(String msg) {
+        if (debug) plugin.getLogger().info("[DEBUG] AuditRecorder: " + msg);
+    }
+
+    /**
+     * Publish an audit entry without waiting for storage
+     * @param action Action name, e.g. "approve"
+     * @param operator Who performed the action
+     * @param target Affected user name, may be null
+     * @param detail Free-form detail, may be null
+     */
+    public void record(String action, String operator, String target, String detail) {
+        Map<String, Object> audit = new HashMap<>(8);
+        audit.put("action", action);
+        audit.put("operator", operator);
+        audit.put("target", target);
+        audit.put("detail", detail);
+        audit.put("timestamp", System.currentTimeMillis());
+        publishedCount.incrementAndGet();
+        if (running && buffer.offer(audit)) return;
+        if (dropOnOverflow && running) {
+            droppedCount.incrementAndGet();
+            long now = System.currentTimeMillis();
+            if (now - lastDropWarning >= DROP_WARN_INTERVAL_MILLIS) {
+                lastDropWarning = now;
+                plugin.getLogger().warning("[VerifyMC] Audit buffer is full, dropped " + droppedCount.get() + " audit entries so far");
+            }
+            return;
+        }
+        // Buffer full (caller_runs) or recorder stopped: write on this thread
+        callerRunsCount.incrementAndGet();
+        write(Collections.singletonList(audit));
+    }
+
+    private void runConsumer() {
+        List<Map<String, Object>> batch = new ArrayList<>(batchSize);
+        while (running || !buffer.isEmpty()) {
+            try {
+                Map<String, Object> first = buffer.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+            } catch (InterruptedException e) {
+                break;
+            }
+            buffer.drainTo(batch, batchSize - 1);
+            write(batch);
+            batch.clear();
+        }
+    }
+
+    private void write(List<Map<String, Object>> batch) {
+        int written = 0;
+        try {
+            written = auditDao.addAudits(batch);
+        } catch (RuntimeException e) {
+            plugin.getLogger().warning("[VerifyMC] Failed to write " + batch.size() + " audit entries: " + e.getMessage());
+        }
+        writtenCount.addAndGet(written);
+        failedCount.addAndGet(batch.size() - written);
+        batchCount.incrementAndGet();
+        lastBatchSize = batch.size();
+    }
+
+    /**
+     * Stop the consumer after it has written everything still buffered
+     */
+    public void shutdown() {
+        running = false;
+        try {
+            consumer.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (consumer.isAlive()) consumer.interrupt();
+        // Anything the consumer did not get to is written here
+        List<Map<String, Object>> rest = new ArrayList<>();
+        buffer.drainTo(rest);
+        if (!rest.isEmpty()) {
+            debugLog("Writing " + rest.size() + " remaining audit entries on shutdown");
+            write(rest);
+        }
+    }
+
+    public int getQueueDepth() {
+        return buffer.size();
+    }
+
+    public long getPublishedCount() {
+        return publishedCount.get();
+    }
+
+    public long getWrittenCount() {
+        return writtenCount.get();
+    }
+
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    public int getLastBatchSize() {
+        return lastBatchSize;
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * @return Entries the storage could not write
+     */
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    public long getCallerRunsCount() {
+        return callerRunsCount.get();
+    }
+}
@@ -2,6 +2,8 @@ package team.kitemc.verifymc.service;
 
 import org.bukkit.Bukkit;
 import org.bukkit.plugin.Plugin;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.regex.Pattern;
 
 /**
@@ -92,6 +94,37 @@ public class AuthmeService {
         }
     }
 
+    /**
+     * Register several users to AuthMe in one main-thread task, without waiting for the result
+     * @param credentials Password by username
+     */
+    public void registerAllToAuthme(Map<String, String> credentials) {
+        if (credentials.isEmpty()) return;
+        if (!isAuthmeEnabled()) {
+            debugLog("AuthMe not enabled, skipping registration");
+            return;
+        }
+
+        Map<String, String> batch = new LinkedHashMap<>(credentials);
+        debugLog("Registering " + batch.size() + " users to AuthMe");
+        Runnable task = () -> {
+            int registered = 0;
+            for (Map.Entry<String, String> entry : batch.entrySet()) {
+                if (executeAuthmeCommand("register " + entry.getKey() + " " + entry.getValue())) registered++;
+            }
+            debugLog("Registered " + registered + " of " + batch.size() + " users to AuthMe");
+        };
+        if (Bukkit.isPrimaryThread()) {
+            task.run();
+            return;
+        }
+        try {
+            Bukkit.getScheduler().runTask(plugin, task);
+        } catch (Exception e) {
+            debugLog("Failed to schedule AuthMe registration: " + e.getMessage());
+        }
+    }
+
     /**
      * Unregister user from AuthMe (executed in main thread)
      * @param username Username to unregister
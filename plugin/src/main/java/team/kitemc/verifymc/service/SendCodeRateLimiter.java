@@ -0,0 +1,275 @@
+package team.kitemc.verifymc.service;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import org.bukkit.plugin.Plugin;
+
+/**
+ * Send budgets for verification emails, checked in addition to the per-email cooldown of {@link VerifyCodeService}:
+ * a token bucket per client IP, one per email domain and one global bucket for all mail.
+ * A request takes one token from each; if any bucket is empty the tokens already taken are returned.
+ * Behind a reverse proxy the client IP is taken from X-Forwarded-For / X-Real-IP, but only when the
+ * connection comes from an address listed in send_code_limits.trusted_proxies.
+ */
+public class SendCodeRateLimiter {
+    private static final String GLOBAL_KEY = "*";
+
+    /**
+     * Budget that rejected a request
+     */
+    public enum Scope { IP, DOMAIN, GLOBAL }
+
+    /**
+     * Outcome of {@link #tryAcquire(String, String)}
+     */
+    public static final class Result {
+        private static final Result ALLOWED = new Result(null, 0);
+        private final Scope rejectedBy;
+        private final long retryAfterMillis;
+
+        private Result(Scope rejectedBy, long retryAfterMillis) {
+            this.rejectedBy = rejectedBy;
+            this.retryAfterMillis = retryAfterMillis;
+        }
+
+        public boolean isAllowed() {
+            return rejectedBy == null;
+        }
+
+        /**
+         * @return Budget that rejected the request, null if allowed
+         */
+        public Scope getRejectedBy() {
+            return rejectedBy;
+        }
+
+        /**
+         * @return Seconds until the exhausted budget has a token again, 0 if allowed
+         */
+        public long getRetryAfterSeconds() {
+            return (retryAfterMillis + 999) / 1000;
+        }
+    }
+
+    /**
+     * Trusted proxy address or CIDR range
+     */
+    private static final class AddressRange {
+        final byte[] network;
+        final int prefixBits;
+
+        AddressRange(byte[] network, int prefixBits) {
+            this.network = network;
+            this.prefixBits = prefixBits;
+        }
+
+        boolean contains(byte[] address) {
+            if (address.length != network.length) return false;
+            int bits = prefixBits;
+            for (int i = 0; i < address.length && bits > 0; i++, bits -= 8) {
+                int mask = bits >= 8 ? 0xFF : (0xFF << (8 - bits)) & 0xFF;
+                if ((address[i] & mask) != (network[i] & mask)) return false;
+            }
+            return true;
+        }
+    }
+
+    private final Plugin plugin;
+    private final boolean debug;
+    private final boolean enabled;
+    private final List<AddressRange> trustedProxies = new ArrayList<>();
+    private final TokenBucketLimiter perIp;
+    private final TokenBucketLimiter perDomain;
+    private final TokenBucketLimiter global;
+    private final AtomicLong allowedCount = new AtomicLong();
+    private final AtomicLong ipRejectedCount = new AtomicLong();
+    private final AtomicLong domainRejectedCount = new AtomicLong();
+    private final AtomicLong globalRejectedCount = new AtomicLong();
+
+    public SendCodeRateLimiter(Plugin plugin) {
+        this.plugin = plugin;
+        this.debug = plugin.getConfig().getBoolean("debug", false);
+        this.enabled = plugin.getConfig().getBoolean("send_code_limits.enabled", true);
+        this.perIp = new TokenBucketLimiter(
+                plugin.getConfig().getInt("send_code_limits.per_ip.burst", 5),
+                plugin.getConfig().getDouble("send_code_limits.per_ip.per_minute", 3));
+        this.perDomain = new TokenBucketLimiter(
+                plugin.getConfig().getInt("send_code_limits.per_domain.burst", 30),
+                plugin.getConfig().getDouble("send_code_limits.per_domain.per_minute", 20));
+        this.global = new TokenBucketLimiter(
+                plugin.getConfig().getInt("send_code_limits.global.burst", 60),
+                plugin.getConfig().getDouble("send_code_limits.global.per_minute", 30));
+        for (String entry : plugin.getConfig().getStringList("send_code_limits.trusted_proxies")) {
+            AddressRange range = parseRange(entry);
+            if (range != null) {
+                trustedProxies.add(range);
+            } else {
+                plugin.getLogger().warning("[VerifyMC] Ignoring invalid trusted proxy address: " + entry);
+            }
+        }
+    }
+
+    /**
+     * Parse "10.0.0.1", "10.0.0.0/8" or an IPv6 equivalent
+     * @return Range, or null if the entry is not an IP literal
+     */
+    private static AddressRange parseRange(String entry) {
+        if (entry == null) return null;
+        String text = entry.trim();
+        int slash = text.indexOf('/');
+        String address = slash >= 0 ? text.substring(0, slash) : text;
+        byte[] bytes = parseAddress(address);
+        if (bytes == null) return null;
+        int prefixBits = bytes.length * 8;
+        if (slash >= 0) {
+            try {
+                prefixBits = Integer.parseInt(text.substring(slash + 1));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            if (prefixBits < 0 || prefixBits > bytes.length * 8) return null;
+        }
+        return new AddressRange(bytes, prefixBits);
+    }
+
+    /**
+     * @return Address bytes of an IP literal, null for anything else (host names are never resolved)
+     */
+    private static byte[] parseAddress(String address) {
+        if (address == null) return null;
+        String text = address.trim();
+        if (text.startsWith("[") && text.endsWith("]")) text = text.substring(1, text.length() - 1);
+        boolean literal = text.indexOf(':') >= 0 ? text.matches("[0-9a-fA-F:.]+") : text.matches("[0-9]{1,3}(\\.[0-9]{1,3}){3}");
+        if (!literal) return null;
+        try {
+            return InetAddress.getByName(text).getAddress();
+        } catch (UnknownHostException e) {
+            return null;
+        }
+    }
+
+    private boolean isTrustedProxy(String address) {
+        if (trustedProxies.isEmpty()) return false;
+        byte[] bytes = parseAddress(address);
+        if (bytes == null) return false;
+        for (AddressRange range : trustedProxies) {
+            if (range.contains(bytes)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Determine the client IP used for the per-IP budget.
+     * Forwarding headers are only read when the peer is a trusted proxy; X-Forwarded-For is walked from the right
+     * and the first address that is not a trusted proxy is the client.
+     * @param peerAddress Address of the TCP peer
+     * @param forwardedFor X-Forwarded-For header, may be null
+     * @param realIp X-Real-IP header, may be null
+     * @return Client IP address
+     */
+    public String resolveClientIp(String peerAddress, String forwardedFor, String realIp) {
+        if (!isTrustedProxy(peerAddress)) return peerAddress;
+        if (forwardedFor != null && !forwardedFor.trim().isEmpty()) {
+            String[] hops = forwardedFor.split(",");
+            String client = null;
+            for (int i = hops.length - 1; i >= 0; i--) {
+                String hop = normalize(hops[i]);
+                if (hop == null) break;
+                client = hop;
+                if (!isTrustedProxy(hop)) break;
+            }
+            if (client != null) return client;
+        }
+        String real = normalize(realIp);
+        return real != null ? real : peerAddress;
+    }
+
+    /**
+     * @return Canonical text of an IP literal, so one client maps to one bucket; null if not an IP literal
+     */
+    private static String normalize(String address) {
+        byte[] bytes = parseAddress(address);
+        if (bytes == null) return null;
+        try {
+            return InetAddress.getByAddress(bytes).getHostAddress();
+        } catch (UnknownHostException e) {
+            return null;
+        }
+    }
+
+    private void debugLog(String msg) {
+        if (debug) plugin.getLogger().info("[DEBUG] SendCodeRateLimiter: " + msg);
+    }
+
+    /**
+     * Take one send from the IP, domain and global budgets
+     * @param ip Client IP address
+     * @param email Recipient email address
+     * @return Result, rejected by the first budget that is exhausted
+     */
+    public Result tryAcquire(String ip, String email) {
+        if (!enabled) return Result.ALLOWED;
+        String domain = email.contains("@") ? email.substring(email.indexOf('@') + 1).toLowerCase(Locale.ROOT) : "";
+        long wait = perIp.tryAcquire(ip);
+        if (wait > 0) {
+            ipRejectedCount.incrementAndGet();
+            debugLog("IP budget exhausted: " + ip);
+            return new Result(Scope.IP, wait);
+        }
+        wait = perDomain.tryAcquire(domain);
+        if (wait > 0) {
+            perIp.release(ip);
+            domainRejectedCount.incrementAndGet();
+            debugLog("Domain budget exhausted: " + domain);
+            return new Result(Scope.DOMAIN, wait);
+        }
+        wait = global.tryAcquire(GLOBAL_KEY);
+        if (wait > 0) {
+            perIp.release(ip);
+            perDomain.release(domain);
+            globalRejectedCount.incrementAndGet();
+            debugLog("Global send budget exhausted");
+            return new Result(Scope.GLOBAL, wait);
+        }
+        allowedCount.incrementAndGet();
+        return Result.ALLOWED;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long getAllowedCount() {
+        return allowedCount.get();
+    }
+
+    public long getIpRejectedCount() {
+        return ipRejectedCount.get();
+    }
+
+    public long getDomainRejectedCount() {
+        return domainRejectedCount.get();
+    }
+
+    public long getGlobalRejectedCount() {
+        return globalRejectedCount.get();
+    }
+
+    /**
+     * @return IP buckets currently tracked
+     */
+    public int getTrackedIpCount() {
+        return perIp.size();
+    }
+
+    /**
+     * @return Domain buckets currently tracked
+     */
+    public int getTrackedDomainCount() {
+        return perDomain.size();
+    }
+}
@@ -0,0 +1,190 @@
+package team.kitemc.verifymc.service;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hashed timing wheel: a ring of slots that one thread advances every tick.
+ * A timeout is placed in the slot of its deadline (with a round count for deadlines further away than one turn),
+ * so scheduling, cancelling and expiring are O(1) each and tasks run within one tick of their deadline.
+ * Timeouts may be scheduled and cancelled from any thread; the slots are only touched by the wheel thread.
+ */
+public class TimingWheel {
+    private final long tickNanos;
+    private final Slot[] wheel;
+    private final int mask;
+    private final Queue<Timeout> added = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final AtomicLong expiredCount = new AtomicLong();
+    private final Thread worker;
+    private final long startNanos;
+    private volatile boolean running = true;
+
+    /**
+     * Scheduled task, cancel it when it is no longer needed
+     */
+    public final class Timeout {
+        private final long deadline;
+        private final Runnable task;
+        private long rounds;
+        private Slot slot;
+        private Timeout prev;
+        private Timeout next;
+        private volatile boolean cancelled;
+
+        private Timeout(long deadline, Runnable task) {
+            this.deadline = deadline;
+            this.task = task;
+        }
+
+        /**
+         * Cancel the task if it has not run yet
+         */
+        public void cancel() {
+            if (cancelled) return;
+            cancelled = true;
+            TimingWheel.this.cancelled.add(this);
+        }
+    }
+
+    private static final class Slot {
+        Timeout head;
+        Timeout tail;
+
+        void add(Timeout timeout) {
+            timeout.slot = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        void remove(Timeout timeout) {
+            if (timeout.prev != null) timeout.prev.next = timeout.next; else head = timeout.next;
+            if (timeout.next != null) timeout.next.prev = timeout.prev; else tail = timeout.prev;
+            timeout.prev = timeout.next = null;
+            timeout.slot = null;
+        }
+    }
+
+    /**
+     * @param threadName Name of the wheel thread
+     * @param tickMillis Tick length, the expiry precision
+     * @param wheelSize Number of slots, rounded up to a power of two
+     */
+    public TimingWheel(String threadName, long tickMillis, int wheelSize) {
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tickMillis));
+        int size = Integer.highestOneBit(Math.max(2, wheelSize) - 1) << 1;
+        this.wheel = new Slot[size];
+        for (int i = 0; i < size; i++) wheel[i] = new Slot();
+        this.mask = size - 1;
+        this.startNanos = System.nanoTime();
+        this.worker = new Thread(this::run, threadName);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Run a task once the delay has passed
+     * @param task Task, runs on the wheel thread and must be short
+     * @param delayMillis Delay in milliseconds
+     * @return Handle to cancel the task
+     */
+    public Timeout schedule(Runnable task, long delayMillis) {
+        Timeout timeout = new Timeout(System.nanoTime() - startNanos + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMillis)), task);
+        pendingCount.incrementAndGet();
+        added.add(timeout);
+        return timeout;
+    }
+
+    private void run() {
+        long tick = 0;
+        while (running) {
+            long sleepNanos = (tick + 1) * tickNanos - (System.nanoTime() - startNanos);
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    if (!running) break;
+                }
+            }
+            processCancelled();
+            transferAdded(tick);
+            expire(wheel[(int) (tick & mask)], (tick + 1) * tickNanos);
+            tick++;
+        }
+    }
+
+    private void processCancelled() {
+        Timeout timeout;
+        while ((timeout = cancelled.poll()) != null) {
+            if (timeout.slot != null) {
+                timeout.slot.remove(timeout);
+                pendingCount.decrementAndGet();
+            }
+        }
+    }
+
+    private void transferAdded(long tick) {
+        Timeout timeout;
+        while ((timeout = added.poll()) != null) {
+            if (timeout.cancelled) {
+                pendingCount.decrementAndGet();
+                continue;
+            }
+            long due = timeout.deadline / tickNanos;
+            timeout.rounds = Math.max(0, (due - tick) / wheel.length);
+            // Overdue timeouts go into the current slot and run this tick
+            wheel[(int) (Math.max(due, tick) & mask)].add(timeout);
+        }
+    }
+
+    private void expire(Slot slot, long tickEnd) {
+        Timeout timeout = slot.head;
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            if (timeout.rounds <= 0 && timeout.deadline < tickEnd) {
+                slot.remove(timeout);
+                pendingCount.decrementAndGet();
+                if (!timeout.cancelled) {
+                    expiredCount.incrementAndGet();
+                    try {
+                        timeout.task.run();
+                    } catch (RuntimeException ignored) {}
+                }
+            } else {
+                timeout.rounds--;
+            }
+            timeout = next;
+        }
+    }
+
+    /**
+     * Stop the wheel thread; pending tasks are discarded
+     */
+    public void stop() {
+        running = false;
+        worker.interrupt();
+    }
+
+    /**
+     * @return Tasks scheduled and not yet run or cancelled
+     */
+    public int getPendingCount() {
+        return pendingCount.get();
+    }
+
+    /**
+     * @return Tasks run since start
+     */
+    public long getExpiredCount() {
+        return expiredCount.get();
+    }
+}
@@ -0,0 +1,113 @@
+package team.kitemc.verifymc.service;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token buckets keyed by string, e.g. client IP.
+ * Keys are spread over lock stripes so concurrent requests for different keys rarely contend.
+ * A bucket holds up to {@code capacity} tokens and refills continuously at {@code perMinute} tokens per minute;
+ * buckets that have refilled completely carry no state and are evicted lazily.
+ */
+public class TokenBucketLimiter {
+    private static final int STRIPES = 16;
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final double capacity;
+    private final double tokensPerNano;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    private static final class Bucket {
+        double tokens;
+        long updatedAt;
+    }
+
+    private static final class Stripe {
+        final Map<String, Bucket> buckets = new HashMap<>();
+        long lastSweep = System.nanoTime();
+    }
+
+    /**
+     * @param capacity Burst size, at least 1
+     * @param perMinute Refill rate in tokens per minute, greater than 0
+     */
+    public TokenBucketLimiter(int capacity, double perMinute) {
+        this.capacity = Math.max(1, capacity);
+        this.tokensPerNano = Math.max(perMinute, 0.001) / TimeUnit.MINUTES.toNanos(1);
+        for (int i = 0; i < STRIPES; i++) stripes[i] = new Stripe();
+    }
+
+    private Stripe stripe(String key) {
+        int h = key.hashCode();
+        return stripes[(h ^ (h >>> 16)) & (STRIPES - 1)];
+    }
+
+    private void refill(Bucket bucket, long now) {
+        bucket.tokens = Math.min(capacity, bucket.tokens + (now - bucket.updatedAt) * tokensPerNano);
+        bucket.updatedAt = now;
+    }
+
+    /**
+     * Take one token
+     * @param key Bucket key
+     * @return 0 if a token was taken, otherwise milliseconds until one is available
+     */
+    public long tryAcquire(String key) {
+        Stripe stripe = stripe(key);
+        long now = System.nanoTime();
+        synchronized (stripe) {
+            if (now - stripe.lastSweep >= SWEEP_INTERVAL_NANOS) sweep(stripe, now);
+            Bucket bucket = stripe.buckets.get(key);
+            if (bucket == null) {
+                bucket = new Bucket();
+                bucket.tokens = capacity;
+                bucket.updatedAt = now;
+                stripe.buckets.put(key, bucket);
+            } else {
+                refill(bucket, now);
+            }
+            if (bucket.tokens >= 1) {
+                bucket.tokens -= 1;
+                return 0;
+            }
+            return Math.max(1, (long) Math.ceil((1 - bucket.tokens) / tokensPerNano / 1_000_000));
+        }
+    }
+
+    /**
+     * Return a token taken by {@link #tryAcquire(String)} when the request was rejected by a later check
+     * @param key Bucket key
+     */
+    public void release(String key) {
+        Stripe stripe = stripe(key);
+        synchronized (stripe) {
+            Bucket bucket = stripe.buckets.get(key);
+            if (bucket != null) bucket.tokens = Math.min(capacity, bucket.tokens + 1);
+        }
+    }
+
+    private void sweep(Stripe stripe, long now) {
+        stripe.lastSweep = now;
+        Iterator<Bucket> it = stripe.buckets.values().iterator();
+        while (it.hasNext()) {
+            Bucket bucket = it.next();
+            refill(bucket, now);
+            if (bucket.tokens >= capacity) it.remove();
+        }
+    }
+
+    /**
+     * @return Number of buckets currently tracked
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.buckets.size();
+            }
+        }
+        return size;
+    }
+}
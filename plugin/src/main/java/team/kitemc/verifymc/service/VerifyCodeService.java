@@ -1,9 +1,12 @@
 package team.kitemc.verifymc.service;
 
-import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Verification codes and per-email send cooldowns.
+ * Each entry is removed by a {@link TimingWheel} within a second of its deadline instead of a periodic full sweep.
+ */
 public class VerifyCodeService {
     private final ConcurrentHashMap<String, CodeEntry> codeMap = new ConcurrentHashMap<>();
     private final ConcurrentHashMap<String, Long> rateLimitMap = new ConcurrentHashMap<>(); // Rate limiting for email sending
@@ -11,11 +14,12 @@ public class VerifyCodeService {
     private final long rateLimitMillis = 60 * 1000; // 60秒频率限制
     private final boolean debug;
     private final org.bukkit.plugin.Plugin plugin;
+    // 1s ticks, 512 slots: codes and cooldowns expire within one turn of the wheel
+    private final TimingWheel expiryWheel = new TimingWheel("VerifyMC-CodeExpiry", 1000, 512);
 
     public VerifyCodeService(org.bukkit.plugin.Plugin plugin) {
         this.plugin = plugin;
         this.debug = plugin.getConfig().getBoolean("debug", false);
-        startCleanupTask();
     }
 
     /**
@@ -24,54 +28,48 @@ public class VerifyCodeService {
     public VerifyCodeService() {
         this.plugin = null;
         this.debug = false;
-        startCleanupTask();
     }
     
     /**
-     * Start cleanup task to remove expired entries
+     * @return Verification code lifetime in minutes
      */
-    private void startCleanupTask() {
-        Thread cleanupThread = new Thread(() -> {
-            while (true) {
-                try {
-                    Thread.sleep(300000); // Clean up every 5 minutes
-                    cleanupExpiredEntries();
-                } catch (InterruptedException e) {
-                    debugLog("Cleanup task interrupted");
-                    break;
-                }
-            }
-        });
-        cleanupThread.setDaemon(true);
-        cleanupThread.start();
-        debugLog("Cleanup task started");
+    public long getExpireMinutes() {
+        return expireMillis / 60000;
     }
-    
+
     /**
-     * Clean up expired code entries and rate limit entries
+     * Stop the expiry thread
      */
-    private void cleanupExpiredEntries() {
-        long currentTime = System.currentTimeMillis();
-        
-        // Clean up expired verification codes
-        codeMap.entrySet().removeIf(entry -> {
-            boolean expired = entry.getValue().expire < currentTime;
-            if (expired) {
-                debugLog("Removed expired code for key: " + entry.getKey());
-            }
-            return expired;
-        });
-        
-        // Clean up expired rate limit entries
-        rateLimitMap.entrySet().removeIf(entry -> {
-            boolean expired = (currentTime - entry.getValue()) > rateLimitMillis;
-            if (expired) {
-                debugLog("Removed expired rate limit for email: " + entry.getKey());
-            }
-            return expired;
-        });
-        
-        debugLog("Cleanup completed. Active codes: " + codeMap.size() + ", Active rate limits: " + rateLimitMap.size());
+    public void shutdown() {
+        expiryWheel.stop();
+    }
+
+    /**
+     * @return Verification codes currently stored
+     */
+    public int getActiveCodeCount() {
+        return codeMap.size();
+    }
+
+    /**
+     * @return Emails currently in their send cooldown
+     */
+    public int getActiveRateLimitCount() {
+        return rateLimitMap.size();
+    }
+
+    /**
+     * @return Expiry tasks waiting on the timing wheel
+     */
+    public int getPendingExpiryCount() {
+        return expiryWheel.getPendingCount();
+    }
+
+    /**
+     * @return Expiry tasks run since startup
+     */
+    public long getExpiredCount() {
+        return expiryWheel.getExpiredCount();
     }
 
     private void debugLog(String msg) {
@@ -99,7 +97,7 @@ public class VerifyCodeService {
         
         // Clean up expired rate limit entries
         if (canSend) {
-            rateLimitMap.remove(email);
+            rateLimitMap.remove(email, lastSentTime);
         }
         
         return canSend;
@@ -130,13 +128,37 @@ public class VerifyCodeService {
         long currentTime = System.currentTimeMillis();
         
         // Record the time when code was generated for rate limiting
-        rateLimitMap.put(key, currentTime);
-        codeMap.put(key, new CodeEntry(code, expireTime));
+        Long sentAt = currentTime;
+        rateLimitMap.put(key, sentAt);
+        expiryWheel.schedule(() -> {
+            if (rateLimitMap.remove(key, sentAt)) debugLog("Removed expired rate limit for email: " + key);
+        }, rateLimitMillis);
+        CodeEntry entry = new CodeEntry(code, expireTime);
+        // Only removes this entry; a newer code for the same key has its own timeout
+        entry.expiry = expiryWheel.schedule(() -> {
+            if (codeMap.remove(key, entry)) debugLog("Removed expired code for key: " + key);
+        }, expireMillis);
+        CodeEntry previous = codeMap.put(key, entry);
+        if (previous != null) previous.expiry.cancel();
         
         debugLog("Generated code: " + code + " for key: " + key + ", expires at: " + expireTime + ", rate limit recorded at: " + currentTime);
         return code;
     }
 
+    /**
+     * Withdraw a code whose email could not be delivered, together with the send cooldown it started.
+     * Nothing happens if a newer code has been generated for the key since.
+     * @param key Key the code was generated for
+     * @param code The undelivered code
+     */
+    public void revokeCode(String key, String code) {
+        CodeEntry entry = codeMap.get(key);
+        if (entry == null || !entry.code.equals(code) || !codeMap.remove(key, entry)) return;
+        entry.expiry.cancel();
+        rateLimitMap.remove(key);
+        debugLog("Revoked undelivered code for key: " + key);
+    }
+
     /**
      * Check verification code for given key
      * @param key Key to check
@@ -152,14 +174,14 @@ public class VerifyCodeService {
         }
         if (entry.expire < System.currentTimeMillis()) {
             debugLog("Code expired for key: " + key + ", expired at: " + entry.expire);
-            codeMap.remove(key);
+            if (codeMap.remove(key, entry)) entry.expiry.cancel();
             return false;
         }
         boolean ok = entry.code.equals(code);
         debugLog("Code verification result: " + ok + " (expected: " + entry.code + ", provided: " + code + ")");
         if (ok) {
             debugLog("Removing used code for key: " + key);
-            codeMap.remove(key);
+            if (codeMap.remove(key, entry)) entry.expiry.cancel();
         }
         return ok;
     }
@@ -167,6 +189,7 @@ public class VerifyCodeService {
     static class CodeEntry {
         String code;
         long expire;
+        volatile TimingWheel.Timeout expiry;
         CodeEntry(String code, long expire) {
             this.code = code;
             this.expire = expire;
@@ -0,0 +1,206 @@
+package team.kitemc.verifymc.service;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.plugin.Plugin;
+
+/**
+ * Queue of server whitelist changes applied in batches on the main thread.
+ * Web handlers and sync jobs enqueue add/remove operations from any thread; operations for the same
+ * player are coalesced (the latest one wins) and one scheduled task applies them through
+ * {@link OfflinePlayer#setWhitelisted(boolean)} instead of one console command per user.
+ * Players already in the requested state are skipped, so they do not trigger a whitelist.json write.
+ */
+public class WhitelistQueue {
+    private final Plugin plugin;
+    private final boolean debug;
+    private final int maxOpsPerTick;
+    // Pending target state keyed by lower-cased player name, in arrival order
+    private final LinkedHashMap<String, PendingOp> pending = new LinkedHashMap<>();
+    private boolean drainScheduled = false;
+    private int peakDepth = 0;
+    private final AtomicLong enqueuedCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final AtomicLong appliedCount = new AtomicLong();
+    private final AtomicLong skippedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private volatile long lastDrainMicros = 0;
+    private volatile int lastBatchSize = 0;
+
+    public WhitelistQueue(Plugin plugin) {
+        this.plugin = plugin;
+        this.debug = plugin.getConfig().getBoolean("debug", false);
+        this.maxOpsPerTick = Math.max(1, plugin.getConfig().getInt("whitelist_queue.max_ops_per_tick", 200));
+    }
+
+    private void debugLog(String msg) {
+        if (debug) plugin.getLogger().info("[DEBUG] WhitelistQueue: " + msg);
+    }
+
+    /**
+     * Queue adding a player to the server whitelist
+     * @param username Player name
+     */
+    public void add(String username) {
+        enqueue(username, true);
+    }
+
+    /**
+     * Queue removing a player from the server whitelist
+     * @param username Player name
+     */
+    public void remove(String username) {
+        enqueue(username, false);
+    }
+
+    private void enqueue(String username, boolean whitelisted) {
+        if (username == null || username.isEmpty()) return;
+        boolean schedule;
+        synchronized (this) {
+            PendingOp previous = pending.put(username.toLowerCase(Locale.ROOT), new PendingOp(username, whitelisted));
+            enqueuedCount.incrementAndGet();
+            if (previous != null) coalescedCount.incrementAndGet();
+            peakDepth = Math.max(peakDepth, pending.size());
+            schedule = !drainScheduled;
+            drainScheduled = true;
+        }
+        if (schedule) scheduleDrain();
+    }
+
+    private void scheduleDrain() {
+        try {
+            Bukkit.getScheduler().runTask(plugin, this::drain);
+        } catch (Exception e) {
+            // Plugin is disabling, pending operations are applied by flush()
+            synchronized (this) {
+                drainScheduled = false;
+            }
+            debugLog("Could not schedule whitelist drain: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Apply up to whitelist_queue.max_ops_per_tick pending operations; must run on the main thread.
+     * Remaining operations are applied in the following ticks.
+     */
+    public void drain() {
+        List<PendingOp> batch;
+        boolean more;
+        synchronized (this) {
+            batch = new ArrayList<>(Math.min(pending.size(), maxOpsPerTick));
+            Iterator<PendingOp> it = pending.values().iterator();
+            while (it.hasNext() && batch.size() < maxOpsPerTick) {
+                batch.add(it.next());
+                it.remove();
+            }
+            more = !pending.isEmpty();
+            drainScheduled = more;
+        }
+        if (batch.isEmpty()) return;
+        long start = System.nanoTime();
+        int applied = 0;
+        for (PendingOp op : batch) {
+            try {
+                OfflinePlayer player = Bukkit.getOfflinePlayer(op.username);
+                if (player.isWhitelisted() == op.whitelisted) {
+                    skippedCount.incrementAndGet();
+                    continue;
+                }
+                player.setWhitelisted(op.whitelisted);
+                applied++;
+            } catch (Exception e) {
+                failedCount.incrementAndGet();
+                debugLog("Whitelist " + (op.whitelisted ? "add" : "remove") + " failed for " + op.username + ": " + e.getMessage());
+            }
+        }
+        appliedCount.addAndGet(applied);
+        lastBatchSize = batch.size();
+        lastDrainMicros = (System.nanoTime() - start) / 1000;
+        debugLog("Applied " + applied + " of " + batch.size() + " whitelist operations in " + lastDrainMicros + "us, " + getQueueDepth() + " still queued");
+        if (more) scheduleDrain();
+    }
+
+    /**
+     * Apply every pending operation now; must run on the main thread (e.g. from onDisable)
+     */
+    public void flush() {
+        while (getQueueDepth() > 0) {
+            drain();
+        }
+    }
+
+    /**
+     * @return Number of operations waiting to be applied
+     */
+    public synchronized int getQueueDepth() {
+        return pending.size();
+    }
+
+    /**
+     * @return Highest queue depth seen since startup
+     */
+    public synchronized int getPeakQueueDepth() {
+        return peakDepth;
+    }
+
+    /**
+     * @return Operations enqueued since startup
+     */
+    public long getEnqueuedCount() {
+        return enqueuedCount.get();
+    }
+
+    /**
+     * @return Operations replaced by a later operation for the same player before being applied
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    /**
+     * @return Operations that changed the server whitelist
+     */
+    public long getAppliedCount() {
+        return appliedCount.get();
+    }
+
+    /**
+     * @return Operations skipped because the player was already in the requested state
+     */
+    public long getSkippedCount() {
+        return skippedCount.get();
+    }
+
+    /**
+     * @return Operations that failed
+     */
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * @return Size of the last applied batch
+     */
+    public int getLastBatchSize() {
+        return lastBatchSize;
+    }
+
+    /**
+     * @return Duration of the last applied batch in microseconds
+     */
+    public long getLastDrainMicros() {
+        return lastDrainMicros;
+    }
+
+    private static final class PendingOp {
+        final String username;
+        final boolean whitelisted;
+
+        PendingOp(String username, boolean whitelisted) {
+            this.username = username;
+            this.whitelisted = whitelisted;
+        }
+    }
+}
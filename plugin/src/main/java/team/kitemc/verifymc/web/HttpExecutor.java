@@ -0,0 +1,174 @@
+package team.kitemc.verifymc.web;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.bukkit.plugin.Plugin;
+
+/**
+ * Bounded executor for the embedded HttpServer, so slow handlers (e.g. SMTP in /api/send_code)
+ * no longer block the single dispatcher thread.
+ *
+ * "fixed" uses a thread pool with a bounded queue; "virtual" uses one virtual thread per request
+ * (Java 21+) with a concurrency limit. When the executor is full the exchange is run on the dispatcher
+ * thread in rejected mode, where {@link RequestMetricsFilter} answers 503 without invoking the handler.
+ */
+public class HttpExecutor implements Executor {
+    private static final ThreadLocal<Boolean> REJECTED = new ThreadLocal<>();
+    private static final ThreadLocal<Long> QUEUED_AT = new ThreadLocal<>();
+
+    private final ExecutorService delegate;
+    private final ThreadPoolExecutor pool;
+    private final Semaphore permits;
+    private final String type;
+    private final int limit;
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * @param plugin Plugin instance, settings are read from web_server.executor
+     */
+    public HttpExecutor(Plugin plugin) {
+        String configured = plugin.getConfig().getString("web_server.executor.type", "fixed");
+        int threads = Math.max(1, plugin.getConfig().getInt("web_server.executor.threads", 8));
+        int queueCapacity = Math.max(0, plugin.getConfig().getInt("web_server.executor.queue_capacity", 100));
+        int maxConcurrent = Math.max(1, plugin.getConfig().getInt("web_server.executor.max_concurrent_requests", 200));
+
+        ExecutorService virtual = "virtual".equalsIgnoreCase(configured) ? newVirtualThreadExecutor() : null;
+        if ("virtual".equalsIgnoreCase(configured) && virtual == null) {
+            plugin.getLogger().warning("[VerifyMC] Virtual threads require Java 21+, using a fixed web thread pool instead");
+        }
+        if (virtual != null) {
+            this.delegate = virtual;
+            this.pool = null;
+            this.permits = new Semaphore(maxConcurrent);
+            this.type = "virtual";
+            this.limit = maxConcurrent;
+        } else {
+            AtomicInteger counter = new AtomicInteger();
+            BlockingQueue<Runnable> queue = queueCapacity > 0 ? new ArrayBlockingQueue<>(queueCapacity) : new SynchronousQueue<>();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, queue, task -> {
+                Thread thread = new Thread(task, "VerifyMC-Web-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.AbortPolicy());
+            executor.allowCoreThreadTimeOut(true);
+            this.delegate = executor;
+            this.pool = executor;
+            this.permits = null;
+            this.type = "fixed";
+            this.limit = threads + queueCapacity;
+        }
+    }
+
+    /**
+     * Create Executors.newVirtualThreadPerTaskExecutor() reflectively, the plugin is compiled for Java 17
+     * @return Executor, or null if virtual threads are not available
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void execute(Runnable exchange) {
+        long queuedAt = System.nanoTime();
+        Runnable task = () -> {
+            QUEUED_AT.set(queuedAt);
+            inFlight.incrementAndGet();
+            try {
+                exchange.run();
+            } finally {
+                inFlight.decrementAndGet();
+                QUEUED_AT.remove();
+                if (permits != null) permits.release();
+            }
+        };
+        try {
+            if (permits != null && !permits.tryAcquire()) {
+                throw new RejectedExecutionException("Too many concurrent requests");
+            }
+            try {
+                delegate.execute(task);
+            } catch (RejectedExecutionException e) {
+                if (permits != null) permits.release();
+                throw e;
+            }
+        } catch (RejectedExecutionException e) {
+            rejectedCount.incrementAndGet();
+            // Let the exchange parse its request on this thread; the filter then answers 503 immediately
+            REJECTED.set(Boolean.TRUE);
+            try {
+                exchange.run();
+            } finally {
+                REJECTED.remove();
+            }
+        }
+    }
+
+    /**
+     * @return true if the current exchange was rejected because the executor is full
+     */
+    static boolean isRejected() {
+        return REJECTED.get() != null;
+    }
+
+    /**
+     * @return Nanoseconds the current exchange waited for a worker, 0 if unknown
+     */
+    static long queueWaitNanos() {
+        Long queuedAt = QUEUED_AT.get();
+        return queuedAt != null ? System.nanoTime() - queuedAt : 0;
+    }
+
+    /**
+     * Stop accepting requests and let running ones finish for a short time
+     */
+    public void shutdown() {
+        delegate.shutdown();
+        try {
+            if (!delegate.awaitTermination(2, TimeUnit.SECONDS)) delegate.shutdownNow();
+        } catch (InterruptedException e) {
+            delegate.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return "fixed" or "virtual"
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * @return Maximum number of requests running or queued before new ones are rejected
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return Requests currently being handled
+     */
+    public int getActiveCount() {
+        return inFlight.get();
+    }
+
+    /**
+     * @return Requests waiting for a worker thread (always 0 for virtual threads)
+     */
+    public int getQueuedCount() {
+        return pool != null ? pool.getQueue().size() : 0;
+    }
+
+    /**
+     * @return Requests answered with 503 since startup
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+}
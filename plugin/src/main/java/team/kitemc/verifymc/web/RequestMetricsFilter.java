@@ -0,0 +1,94 @@
+package team.kitemc.verifymc.web;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import org.json.JSONObject;
+
+/**
+ * Records request count, errors, handler time and queue wait per context path,
+ * and answers 503 for exchanges the {@link HttpExecutor} could not accept.
+ */
+public class RequestMetricsFilter extends Filter {
+    private static final byte[] OVERLOADED = "{\"success\":false,\"message\":\"Server busy, please retry\"}".getBytes(StandardCharsets.UTF_8);
+
+    private final ConcurrentHashMap<String, EndpointStats> endpoints = new ConcurrentHashMap<>();
+
+    @Override
+    public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+        String endpoint = exchange.getHttpContext().getPath();
+        EndpointStats stats = endpoints.computeIfAbsent(endpoint, key -> new EndpointStats());
+        if (HttpExecutor.isRejected()) {
+            stats.rejected.increment();
+            try {
+                exchange.getResponseHeaders().add("Content-Type", "application/json; charset=utf-8");
+                exchange.getResponseHeaders().add("Retry-After", "1");
+                exchange.sendResponseHeaders(503, OVERLOADED.length);
+                exchange.getResponseBody().write(OVERLOADED);
+            } finally {
+                exchange.close();
+            }
+            return;
+        }
+        long waitNanos = HttpExecutor.queueWaitNanos();
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            chain.doFilter(exchange);
+            failed = exchange.getResponseCode() >= 500;
+        } finally {
+            stats.record(System.nanoTime() - start, waitNanos, failed);
+        }
+    }
+
+    @Override
+    public String description() {
+        return "VerifyMC request metrics";
+    }
+
+    /**
+     * @return Per-endpoint statistics as JSON, keyed by context path
+     */
+    public JSONObject toJson() {
+        Map<String, EndpointStats> sorted = new TreeMap<>(endpoints);
+        JSONObject json = new JSONObject();
+        for (Map.Entry<String, EndpointStats> entry : sorted.entrySet()) {
+            json.put(entry.getKey(), entry.getValue().toJson());
+        }
+        return json;
+    }
+
+    private static final class EndpointStats {
+        final LongAdder count = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAdder rejected = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+        final LongAdder totalWaitNanos = new LongAdder();
+        final AtomicLong maxNanos = new AtomicLong();
+
+        void record(long nanos, long waitNanos, boolean failed) {
+            count.increment();
+            if (failed) errors.increment();
+            totalNanos.add(nanos);
+            totalWaitNanos.add(waitNanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        JSONObject toJson() {
+            long requests = count.sum();
+            return new JSONObject()
+                .put("count", requests)
+                .put("errors", errors.sum())
+                .put("rejected", rejected.sum())
+                .put("avgMs", requests > 0 ? totalNanos.sum() / requests / 1e6 : 0.0)
+                .put("maxMs", maxNanos.get() / 1e6)
+                .put("avgQueueWaitMs", requests > 0 ? totalWaitNanos.sum() / requests / 1e6 : 0.0);
+        }
+    }
+}
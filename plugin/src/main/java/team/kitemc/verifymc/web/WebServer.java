@@ -1,6 +1,7 @@
 package team.kitemc.verifymc.web;
 
 import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.HttpContext;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import java.io.*;
@@ -11,10 +12,18 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import team.kitemc.verifymc.service.VerifyCodeService;
 import team.kitemc.verifymc.mail.MailService;
+import team.kitemc.verifymc.mail.MailDelivery;
 import team.kitemc.verifymc.db.UserDao;
 import team.kitemc.verifymc.db.AuditDao;
+import team.kitemc.verifymc.db.AuditCursor;
+import team.kitemc.verifymc.db.UserCursor;
+import team.kitemc.verifymc.db.UserPage;
 import team.kitemc.verifymc.service.AuthmeService;
+import team.kitemc.verifymc.service.WhitelistQueue;
+import team.kitemc.verifymc.service.AuditRecorder;
+import team.kitemc.verifymc.service.SendCodeRateLimiter;
 import org.bukkit.plugin.Plugin;
+import org.json.JSONArray;
 import org.json.JSONObject;
 import java.util.ResourceBundle;
 import java.util.List;
@@ -25,13 +34,14 @@ import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Base64;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.nio.charset.StandardCharsets;
 
 public class WebServer {
     private HttpServer server;
+    private HttpExecutor executor;
+    private final RequestMetricsFilter requestMetrics = new RequestMetricsFilter();
     private final int port;
-    private String staticDir;
+    private volatile String staticDir;
     private final Plugin plugin;
     private final VerifyCodeService codeService;
     private final MailService mailService;
@@ -39,15 +49,20 @@ public class WebServer {
     private final AuditDao auditDao;
     private final AuthmeService authmeService;
     private final ReviewWebSocketServer wsServer;
+    private final WhitelistQueue whitelistQueue;
+    private final AuditRecorder auditRecorder;
+    private final SendCodeRateLimiter sendLimiter;
     private final ResourceBundle messages;
     private final boolean debug;
-    private final HashMap<String, ResourceBundle> languageCache = new HashMap<>();
+    // Handlers run on several worker threads
+    private final ConcurrentHashMap<String, ResourceBundle> languageCache = new ConcurrentHashMap<>();
     
     // Authentication related
     private final ConcurrentHashMap<String, Long> validTokens = new ConcurrentHashMap<>();
     private final Pattern EMAIL_PATTERN = Pattern.compile("^[A-Za-z0-9+_.-]+@(.+)$");
     private final Pattern UUID_PATTERN = Pattern.compile("^[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}$");
     private static final long TOKEN_EXPIRY_TIME = 3600000; // 1 hour
+    private static final int MAX_REVIEW_BATCH_SIZE = 200;
 
     // Default mainstream email domain whitelist
     private static final java.util.List<String> DEFAULT_EMAIL_DOMAIN_WHITELIST = Arrays.asList(
@@ -56,7 +71,7 @@ public class WebServer {
         "protonmail.com", "zoho.com"
     );
 
-    public WebServer(int port, String staticDir, Plugin plugin, VerifyCodeService codeService, MailService mailService, UserDao userDao, AuditDao auditDao, AuthmeService authmeService, ReviewWebSocketServer wsServer, ResourceBundle messages) {
+    public WebServer(int port, String staticDir, Plugin plugin, VerifyCodeService codeService, MailService mailService, UserDao userDao, AuditDao auditDao, AuthmeService authmeService, ReviewWebSocketServer wsServer, WhitelistQueue whitelistQueue, AuditRecorder auditRecorder, ResourceBundle messages) {
         this.port = port;
         this.staticDir = staticDir;
         this.plugin = plugin;
@@ -66,6 +81,9 @@ public class WebServer {
         this.auditDao = auditDao;
         this.authmeService = authmeService;
         this.wsServer = wsServer;
+        this.whitelistQueue = whitelistQueue;
+        this.auditRecorder = auditRecorder;
+        this.sendLimiter = new SendCodeRateLimiter(plugin);
         this.messages = messages;
         this.debug = plugin.getConfig().getBoolean("debug", false);
     }
@@ -74,6 +92,27 @@ public class WebServer {
         if (debug) plugin.getLogger().info("[DEBUG] " + msg);
     }
 
+    /**
+     * Record an admin action in the audit log without blocking the request
+     * @param exchange HTTP exchange, its client address is stored with the entry
+     * @param action Action name
+     * @param target Affected username, may be null
+     * @param detail Additional detail, may be null
+     */
+    private void audit(HttpExchange exchange, String action, String target, String detail) {
+        String ip = "ip=" + clientAddress(exchange);
+        auditRecorder.record(action, "admin", target, detail != null ? ip + ", " + detail : ip);
+    }
+
+    /**
+     * @param exchange HTTP exchange
+     * @return Remote IP address of the client
+     */
+    private String clientAddress(HttpExchange exchange) {
+        java.net.InetSocketAddress remote = exchange.getRemoteAddress();
+        return remote != null && remote.getAddress() != null ? remote.getAddress().getHostAddress() : "unknown";
+    }
+
     /**
      * Authentication verification method
      * @param exchange HTTP exchange
@@ -224,10 +263,10 @@ public class WebServer {
         startTokenCleanupTask();
         
         // Static resources
-        server.createContext("/", new StaticHandler(staticDir));
+        createContext("/", new StaticHandler(staticDir));
         
         // API examples
-        server.createContext("/api/ping", exchange -> {
+        createContext("/api/ping", exchange -> {
             String resp = "{\"msg\":\"pong\"}";
             exchange.getResponseHeaders().add("Content-Type", "application/json; charset=utf-8");
             byte[] data = resp.getBytes(StandardCharsets.UTF_8);
@@ -238,7 +277,7 @@ public class WebServer {
         });
         
         // /api/config configuration interface
-        server.createContext("/api/config", exchange -> {
+        createContext("/api/config", exchange -> {
             JSONObject resp = new JSONObject();
             org.bukkit.configuration.file.FileConfiguration config = plugin.getConfig();
             // login configuration
@@ -272,7 +311,7 @@ public class WebServer {
         });
         
         // /api/reload-config reload configuration interface - requires authentication
-        server.createContext("/api/reload-config", exchange -> {
+        createContext("/api/reload-config", exchange -> {
             if (!"POST".equals(exchange.getRequestMethod())) { 
                 exchange.sendResponseHeaders(405, 0); 
                 exchange.close(); 
@@ -291,6 +330,7 @@ public class WebServer {
             JSONObject resp = new JSONObject();
             try {
                 plugin.reloadConfig();
+                mailService.reload();
                 // Update static file directory to support theme switching
                 String theme = plugin.getConfig().getString("frontend.theme", "default");
                 
@@ -311,9 +351,10 @@ public class WebServer {
                 
                 // Recreate static file handler
                 server.removeContext("/");
-                server.createContext("/", new StaticHandler(staticDir));
+                createContext("/", new StaticHandler(staticDir));
                 debugLog("Static handler updated for theme: " + theme);
                 
+                audit(exchange, "reload_config", null, "theme=" + theme);
                 resp.put("success", true);
                 resp.put("message", "Configuration reloaded successfully. Theme switched to: " + theme);
             } catch (Exception e) {
@@ -324,7 +365,7 @@ public class WebServer {
         });
         
         // /api/send_code send verification code interface with rate limiting and authentication
-        server.createContext("/api/send_code", exchange -> {
+        createContext("/api/send_code", exchange -> {
             debugLog("/api/send_code called");
             if (!"POST".equals(exchange.getRequestMethod())) { 
                 exchange.sendResponseHeaders(405, 0); 
@@ -378,6 +419,21 @@ public class WebServer {
                     return;
                 }
             }
+
+            // Send budgets per client IP, per email domain and for all mail, taken only once the request is otherwise valid
+            String clientIp = sendLimiter.resolveClientIp(clientAddress(exchange),
+                    exchange.getRequestHeaders().getFirst("X-Forwarded-For"), exchange.getRequestHeaders().getFirst("X-Real-IP"));
+            SendCodeRateLimiter.Result budget = sendLimiter.tryAcquire(clientIp, email);
+            if (!budget.isAllowed()) {
+                long retrySeconds = budget.getRetryAfterSeconds();
+                JSONObject resp = new JSONObject();
+                resp.put("success", false);
+                resp.put("msg", getMsg("email.rate_limited", language).replace("{seconds}", String.valueOf(retrySeconds)));
+                resp.put("remaining_seconds", retrySeconds);
+                debugLog("Send budget " + budget.getRejectedBy() + " exhausted for email: " + email + ", retry in " + retrySeconds + "s");
+                sendJson(exchange, resp);
+                return;
+            }
             
             // Generate verification code and send email
             String code = codeService.generateCode(email);
@@ -385,22 +441,59 @@ public class WebServer {
             
             // Get email subject from config.yml, fallback to default if not set
             String emailSubject = plugin.getConfig().getString("email_subject", "VerifyMC Verification Code");
-            boolean sent = mailService.sendCode(email, emailSubject, code);
+            // Delivery happens in the background; the client can poll /api/mail-status with the delivery id
+            MailDelivery delivery = mailService.sendCodeAsync(email, emailSubject, code, codeService.getExpireMinutes());
+            boolean queued = delivery != null;
             JSONObject resp = new JSONObject();
-            resp.put("success", sent);
-            resp.put("msg", sent ? getMsg("email.sent", language) : getMsg("email.failed", language));
+            resp.put("success", queued);
+            resp.put("msg", queued ? getMsg("email.sent", language) : getMsg("email.failed", language));
             
-            if (sent) {
-                debugLog("Verification code sent successfully to: " + email);
+            if (queued) {
+                resp.put("deliveryId", delivery.getId());
+                debugLog("Verification code queued for: " + email + ", delivery: " + delivery.getId());
+                // A code that never arrives must not hold the email in its cooldown
+                delivery.getResult().thenAccept(sent -> {
+                    if (!sent) codeService.revokeCode(email, code);
+                });
             } else {
-                debugLog("Failed to send verification code to: " + email);
+                codeService.revokeCode(email, code);
+                debugLog("Failed to queue verification code for: " + email);
             }
             
             sendJson(exchange, resp);
         });
+
+        // /api/mail-status delivery state of a queued verification email
+        createContext("/api/mail-status", exchange -> {
+            String query = exchange.getRequestURI().getQuery();
+            String id = null;
+            String language = "en";
+            if (query != null) {
+                for (String param : query.split("&")) {
+                    String[] keyValue = param.split("=");
+                    if (keyValue.length == 2 && "id".equals(keyValue[0])) id = keyValue[1];
+                    if (keyValue.length == 2 && "language".equals(keyValue[0])) language = keyValue[1];
+                }
+            }
+            MailDelivery delivery = mailService.getDelivery(id);
+            JSONObject resp = new JSONObject();
+            if (delivery == null) {
+                resp.put("success", false);
+                resp.put("message", "Unknown delivery id");
+            } else {
+                resp.put("success", true);
+                resp.put("status", delivery.getStatus().name().toLowerCase());
+                resp.put("attempts", delivery.getAttempts());
+                if (delivery.getStatus() == MailDelivery.Status.FAILED) {
+                    // The code was withdrawn and the email can request a new one right away
+                    resp.put("msg", getMsg("email.failed", language));
+                }
+            }
+            sendJson(exchange, resp);
+        });
         
         // /api/register registration interface
-        server.createContext("/api/register", exchange -> {
+        createContext("/api/register", exchange -> {
             debugLog("/api/register called");
             if (!"POST".equals(exchange.getRequestMethod())) { exchange.sendResponseHeaders(405, 0); exchange.close(); return; }
             JSONObject req = new JSONObject(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
@@ -534,10 +627,8 @@ public class WebServer {
                 debugLog("registerUser result: " + ok);
                 if (ok) {
                     // Registration successful, automatically add to whitelist
-                    debugLog("Execute: whitelist add " + username);
-                    org.bukkit.Bukkit.getScheduler().runTask(plugin, () -> {
-                        org.bukkit.Bukkit.dispatchCommand(org.bukkit.Bukkit.getConsoleSender(), "whitelist add " + username);
-                    });
+                    debugLog("Queue whitelist add: " + username);
+                    whitelistQueue.add(username);
                     
                     // If Authme integration is enabled and auto registration is enabled, register to Authme
                     if (authmeService.isAuthmeEnabled() && authmeService.isAutoRegisterEnabled() && 
@@ -555,7 +646,7 @@ public class WebServer {
         });
         
         // Admin login
-        server.createContext("/api/admin-login", exchange -> {
+        createContext("/api/admin-login", exchange -> {
             if (!"POST".equals(exchange.getRequestMethod())) { 
                 exchange.sendResponseHeaders(405, 0); 
                 exchange.close(); 
@@ -570,10 +661,12 @@ public class WebServer {
             
             if (password.equals(adminPassword)) {
                 String token = generateSecureToken();
+                audit(exchange, "admin_login", null, null);
                 resp.put("success", true);
                 resp.put("token", token);
                 resp.put("message", getMsg("admin.login_success", language));
             } else {
+                audit(exchange, "admin_login_failed", null, null);
                 resp.put("success", false);
                 resp.put("message", getMsg("admin.login_failed", language));
             }
@@ -582,7 +675,7 @@ public class WebServer {
         });
         
         // Admin token verification
-        server.createContext("/api/admin-verify", exchange -> {
+        createContext("/api/admin-verify", exchange -> {
             if (!"POST".equals(exchange.getRequestMethod())) { 
                 exchange.sendResponseHeaders(405, 0); 
                 exchange.close(); 
@@ -603,7 +696,7 @@ public class WebServer {
         });
         
         // Get pending users list - requires authentication
-        server.createContext("/api/pending-list", exchange -> {
+        createContext("/api/pending-list", exchange -> {
             // Verify authentication
             if (!isAuthenticated(exchange)) {
                 JSONObject resp = new JSONObject();
@@ -637,7 +730,7 @@ public class WebServer {
         });
         
         // Unified user review interface - requires authentication
-        server.createContext("/api/review", exchange -> {
+        createContext("/api/review", exchange -> {
             if (!"POST".equals(exchange.getRequestMethod())) { 
                 exchange.sendResponseHeaders(405, 0); 
                 exchange.close(); 
@@ -691,13 +784,12 @@ public class WebServer {
                 
                 String status = "approve".equals(action) ? "approved" : "rejected";
                 boolean success = userDao.updateUserStatus(uuid, status);
+                if (success) audit(exchange, action, username, "uuid=" + uuid);
                 
                 if (success && "approve".equals(action) && username != null) {
                     // Review approved, add to whitelist
-                    debugLog("Execute: whitelist add " + username);
-                    org.bukkit.Bukkit.getScheduler().runTask(plugin, () -> {
-                        org.bukkit.Bukkit.dispatchCommand(org.bukkit.Bukkit.getConsoleSender(), "whitelist add " + username);
-                    });
+                    debugLog("Queue whitelist add: " + username);
+                    whitelistQueue.add(username);
                     
                     // If Authme integration is enabled and auto registration is enabled, and password exists, register to Authme
                     if (authmeService.isAuthmeEnabled() && authmeService.isAutoRegisterEnabled() && 
@@ -726,9 +818,115 @@ public class WebServer {
             
             sendJson(exchange, resp);
         });
-        
+
+        // Bulk review interface - requires authentication
+        // Body: {"uuids": [...], "action": "approve"|"reject", "language": "en"}; one storage write and one WebSocket event per batch
+        createContext("/api/review/batch", exchange -> {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, 0);
+                exchange.close();
+                return;
+            }
+
+            // Verify authentication
+            if (!isAuthenticated(exchange)) {
+                JSONObject resp = new JSONObject();
+                resp.put("success", false);
+                resp.put("message", "Authentication required");
+                sendJson(exchange, resp);
+                return;
+            }
+
+            JSONObject req = new JSONObject(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+            JSONArray uuidArray = req.optJSONArray("uuids");
+            String action = req.optString("action");
+            String language = req.optString("language", "en");
+
+            // Input validation
+            if (!"approve".equals(action) && !"reject".equals(action)) {
+                JSONObject resp = new JSONObject();
+                resp.put("success", false);
+                resp.put("message", "Invalid action");
+                sendJson(exchange, resp);
+                return;
+            }
+            if (uuidArray == null || uuidArray.length() == 0 || uuidArray.length() > MAX_REVIEW_BATCH_SIZE) {
+                JSONObject resp = new JSONObject();
+                resp.put("success", false);
+                resp.put("message", "Expected 1 to " + MAX_REVIEW_BATCH_SIZE + " UUIDs");
+                sendJson(exchange, resp);
+                return;
+            }
+
+            List<String> uuids = new java.util.ArrayList<>(uuidArray.length());
+            List<String> failed = new java.util.ArrayList<>();
+            for (int i = 0; i < uuidArray.length(); i++) {
+                String uuid = uuidArray.optString(i, "");
+                if (isValidUUID(uuid)) {
+                    uuids.add(uuid);
+                } else {
+                    failed.add(uuid);
+                }
+            }
+
+            JSONObject resp = new JSONObject();
+            try {
+                String status = "approve".equals(action) ? "approved" : "rejected";
+                List<Map<String, Object>> updated = userDao.updateUserStatuses(uuids, status);
+                debugLog("Batch review: " + action + " " + updated.size() + " of " + uuidArray.length() + " users");
+
+                java.util.Set<String> updatedUuids = new java.util.HashSet<>();
+                Map<String, String> authmeRegistrations = new java.util.LinkedHashMap<>();
+                for (Map<String, Object> user : updated) {
+                    updatedUuids.add((String) user.get("uuid"));
+                    String username = (String) user.get("username");
+                    audit(exchange, action, username, "uuid=" + user.get("uuid") + ", batch");
+                    String password = (String) user.get("password");
+                    if ("approve".equals(action) && username != null) {
+                        // Review approved, add to whitelist (coalesced by the whitelist queue)
+                        whitelistQueue.add(username);
+
+                        // If Authme integration is enabled and auto registration is enabled, and password exists, register to Authme
+                        if (authmeService.isAuthmeEnabled() && authmeService.isAutoRegisterEnabled() &&
+                            password != null && !password.trim().isEmpty()) {
+                            authmeRegistrations.put(username, password);
+                        }
+                    }
+                }
+                // One main-thread task registers the whole batch, the request does not wait for it
+                authmeService.registerAllToAuthme(authmeRegistrations);
+                for (String uuid : uuids) {
+                    if (!updatedUuids.contains(uuid)) failed.add(uuid);
+                }
+
+                boolean success = !updated.isEmpty();
+                resp.put("success", success);
+                resp.put("updated", new JSONArray(updatedUuids));
+                resp.put("failed", new JSONArray(failed));
+                resp.put("msg", success ?
+                    ("approve".equals(action) ? getMsg("review.approve_success", language) : getMsg("review.reject_success", language)) :
+                    getMsg("review.failed", language));
+
+                // One aggregated WebSocket push for the whole batch
+                if (success) {
+                    JSONObject wsMsg = new JSONObject();
+                    wsMsg.put("type", "user_update");
+                    wsMsg.put("action", action);
+                    wsMsg.put("uuids", new JSONArray(updatedUuids));
+                    wsMsg.put("count", updatedUuids.size());
+                    wsMsg.put("msg", resp.getString("msg"));
+                    wsServer.broadcastMessage(wsMsg.toString());
+                }
+            } catch (Exception e) {
+                resp.put("success", false);
+                resp.put("message", getMsg("review.failed", language));
+            }
+
+            sendJson(exchange, resp);
+        });
+
         // Get all users - requires authentication
-        server.createContext("/api/all-users", exchange -> {
+        createContext("/api/all-users", exchange -> {
             // Verify authentication
             if (!isAuthenticated(exchange)) {
                 JSONObject resp = new JSONObject();
@@ -761,7 +959,7 @@ public class WebServer {
         });
         
         // Get users with pagination - requires authentication
-        server.createContext("/api/users-paginated", exchange -> {
+        createContext("/api/users-paginated", exchange -> {
             // Verify authentication
             if (!isAuthenticated(exchange)) {
                 JSONObject resp = new JSONObject();
@@ -776,6 +974,7 @@ public class WebServer {
             int page = 1;
             int pageSize = 10;
             String searchQuery = "";
+            String afterToken = null;
             
             // Parse query parameters
             if (query != null) {
@@ -796,6 +995,9 @@ public class WebServer {
                                 case "search":
                                     searchQuery = java.net.URLDecoder.decode(value, "UTF-8");
                                     break;
+                                case "after":
+                                    afterToken = java.net.URLDecoder.decode(value, "UTF-8");
+                                    break;
                                 case "language":
                                     language = value;
                                     break;
@@ -807,20 +1009,32 @@ public class WebServer {
                 }
             }
             
-            debugLog("Paginated users request: page=" + page + ", pageSize=" + pageSize + ", search=" + searchQuery);
+            // Keyset cursor from the previous response's nextCursor, takes precedence over page offsets
+            UserCursor after = UserCursor.decode(afterToken);
+            if (afterToken != null && !afterToken.trim().isEmpty() && after == null) {
+                // Never fall back to the first page, the client would list the same users again
+                JSONObject resp = new JSONObject();
+                resp.put("success", false);
+                resp.put("message", "Invalid cursor");
+                sendJson(exchange, resp);
+                return;
+            }
+            debugLog("Paginated users request: page=" + page + ", pageSize=" + pageSize + ", search=" + searchQuery + ", cursor=" + (after != null));
             
             JSONObject resp = new JSONObject();
             try {
-                List<Map<String, Object>> users;
-                int totalCount;
-                
-                // Get approved users with pagination and optional search
-                if (searchQuery != null && !searchQuery.trim().isEmpty()) {
-                    users = userDao.getApprovedUsersWithPaginationAndSearch(page, pageSize, searchQuery);
-                    totalCount = userDao.getApprovedUserCountWithSearch(searchQuery);
+                // Pages that start at offset 0 (cursor pages and page 1) fetch one extra row to tell whether more users follow
+                boolean probe = after != null || page == 1;
+                // Get approved users with pagination and optional search, page and total count in one pass
+                UserPage userPage = userDao.getApprovedUsersPage(page, probe ? pageSize + 1 : pageSize, searchQuery, after);
+                List<Map<String, Object>> users = userPage.getUsers();
+                int totalCount = userPage.getTotalCount();
+                boolean moreUsers;
+                if (probe) {
+                    moreUsers = users.size() > pageSize;
+                    if (moreUsers) users = new java.util.ArrayList<>(users.subList(0, pageSize));
                 } else {
-                    users = userDao.getApprovedUsersWithPagination(page, pageSize);
-                    totalCount = userDao.getApprovedUserCount();
+                    moreUsers = (long) (page - 1) * pageSize + users.size() < totalCount;
                 }
                 
                 // Ensure required fields exist (no need to filter pending users as they're already excluded)
@@ -831,8 +1045,12 @@ public class WebServer {
                 
                 // Calculate pagination info
                 int totalPages = (int) Math.ceil((double) totalCount / pageSize);
-                boolean hasNext = page < totalPages;
+                boolean hasNext = after != null ? moreUsers : page < totalPages;
                 boolean hasPrev = page > 1;
+                // Cursor for the following page, only when more users follow.
+                // Search results are ranked by relevance rather than regTime, so they page by offset only
+                boolean ranked = searchQuery != null && !searchQuery.trim().isEmpty();
+                String nextCursor = !ranked && moreUsers && !users.isEmpty() ? UserCursor.after(users.get(users.size() - 1)).encode() : null;
                 
                 resp.put("success", true);
                 resp.put("users", users);
@@ -843,6 +1061,7 @@ public class WebServer {
                     .put("totalPages", totalPages)
                     .put("hasNext", hasNext)
                     .put("hasPrev", hasPrev)
+                    .put("nextCursor", nextCursor != null ? nextCursor : JSONObject.NULL)
                 );
                 
                 debugLog("Returning " + users.size() + " approved users for page " + page + "/" + totalPages);
@@ -856,7 +1075,7 @@ public class WebServer {
         });
         
         // Delete user - requires authentication
-        server.createContext("/api/delete-user", exchange -> {
+        createContext("/api/delete-user", exchange -> {
             if (!"POST".equals(exchange.getRequestMethod())) { 
                 exchange.sendResponseHeaders(405, 0); 
                 exchange.close(); 
@@ -898,13 +1117,12 @@ public class WebServer {
                 
                 String username = (String) user.get("username");
                 boolean success = userDao.deleteUser(uuid);
+                if (success) audit(exchange, "delete", username, "uuid=" + uuid);
                 
                 if (success && username != null) {
                     // Remove from whitelist
-                    debugLog("Execute: whitelist remove " + username);
-                    org.bukkit.Bukkit.getScheduler().runTask(plugin, () -> {
-                        org.bukkit.Bukkit.dispatchCommand(org.bukkit.Bukkit.getConsoleSender(), "whitelist remove " + username);
-                    });
+                    debugLog("Queue whitelist remove: " + username);
+                    whitelistQueue.remove(username);
                     
                     // If Authme integration is enabled and auto unregister is configured, unregister user from Authme
                     if (authmeService.isAuthmeEnabled() && authmeService.isAutoUnregisterEnabled()) {
@@ -924,7 +1142,7 @@ public class WebServer {
         });
         
         // Ban user - requires authentication
-        server.createContext("/api/ban-user", exchange -> {
+        createContext("/api/ban-user", exchange -> {
             if (!"POST".equals(exchange.getRequestMethod())) { 
                 exchange.sendResponseHeaders(405, 0); 
                 exchange.close(); 
@@ -966,13 +1184,12 @@ public class WebServer {
                 
                 String username = (String) user.get("username");
                 boolean success = userDao.updateUserStatus(uuid, "banned");
+                if (success) audit(exchange, "ban", username, "uuid=" + uuid);
                 
                 if (success && username != null) {
                     // Remove from whitelist
-                    debugLog("Execute: whitelist remove " + username);
-                    org.bukkit.Bukkit.getScheduler().runTask(plugin, () -> {
-                        org.bukkit.Bukkit.dispatchCommand(org.bukkit.Bukkit.getConsoleSender(), "whitelist remove " + username);
-                    });
+                    debugLog("Queue whitelist remove: " + username);
+                    whitelistQueue.remove(username);
                 }
                 
                 resp.put("success", success);
@@ -987,7 +1204,7 @@ public class WebServer {
         });
         
         // Unban user - requires authentication
-        server.createContext("/api/unban-user", exchange -> {
+        createContext("/api/unban-user", exchange -> {
             if (!"POST".equals(exchange.getRequestMethod())) { 
                 exchange.sendResponseHeaders(405, 0); 
                 exchange.close(); 
@@ -1029,13 +1246,12 @@ public class WebServer {
                 
                 String username = (String) user.get("username");
                 boolean success = userDao.updateUserStatus(uuid, "approved");
+                if (success) audit(exchange, "unban", username, "uuid=" + uuid);
                 
                 if (success && username != null) {
                     // Re-add to whitelist
-                    debugLog("Execute: whitelist add " + username);
-                    org.bukkit.Bukkit.getScheduler().runTask(plugin, () -> {
-                        org.bukkit.Bukkit.dispatchCommand(org.bukkit.Bukkit.getConsoleSender(), "whitelist add " + username);
-                    });
+                    debugLog("Queue whitelist add: " + username);
+                    whitelistQueue.add(username);
                 }
                 
                 resp.put("success", success);
@@ -1050,7 +1266,7 @@ public class WebServer {
         });
         
         // Change user password
-        server.createContext("/api/change-password", exchange -> {
+        createContext("/api/change-password", exchange -> {
             if (!"POST".equals(exchange.getRequestMethod())) { 
                 exchange.sendResponseHeaders(405, 0); 
                 exchange.close(); 
@@ -1119,6 +1335,7 @@ public class WebServer {
                 
                 // Update password
                 boolean success = userDao.updateUserPassword(targetUuid, newPassword);
+                if (success) audit(exchange, "change_password", targetUsername, "uuid=" + targetUuid);
                 
                 if (success) {
                     // If Authme integration is enabled, synchronize Authme password update
@@ -1142,7 +1359,7 @@ public class WebServer {
         });
         
         // Get user status
-        server.createContext("/api/user-status", exchange -> {
+        createContext("/api/user-status", exchange -> {
             if (!"GET".equals(exchange.getRequestMethod())) { 
                 exchange.sendResponseHeaders(405, 0); 
                 exchange.close(); 
@@ -1188,7 +1405,7 @@ public class WebServer {
         });
         
         // Version check API - requires authentication
-        server.createContext("/api/version-check", exchange -> {
+        createContext("/api/version-check", exchange -> {
             // Verify authentication
             if (!isAuthenticated(exchange)) {
                 JSONObject resp = new JSONObject();
@@ -1242,13 +1459,161 @@ public class WebServer {
                 sendJson(exchange, resp);
             }
         });
-        
-        server.setExecutor(null);
+
+        // Audit history, newest first, with optional filters and keyset pagination - requires authentication
+        createContext("/api/audits", exchange -> {
+            if (!isAuthenticated(exchange)) {
+                JSONObject resp = new JSONObject();
+                resp.put("success", false);
+                resp.put("message", "Authentication required");
+                sendJson(exchange, resp);
+                return;
+            }
+
+            String query = exchange.getRequestURI().getQuery();
+            String action = null;
+            String operator = null;
+            String target = null;
+            long since = 0;
+            long until = 0;
+            int pageSize = 20;
+            String afterToken = null;
+            if (query != null) {
+                for (String param : query.split("&")) {
+                    String[] keyValue = param.split("=");
+                    if (keyValue.length != 2) continue;
+                    try {
+                        String value = java.net.URLDecoder.decode(keyValue[1], "UTF-8");
+                        switch (keyValue[0]) {
+                            case "action": action = value; break;
+                            case "operator": operator = value; break;
+                            case "target": target = value; break;
+                            case "since": since = Math.max(0, Long.parseLong(value)); break;
+                            case "until": until = Math.max(0, Long.parseLong(value)); break;
+                            case "pageSize": pageSize = Math.max(1, Math.min(100, Integer.parseInt(value))); break;
+                            case "after": afterToken = value; break;
+                        }
+                    } catch (Exception e) {
+                        debugLog("Error parsing query parameter: " + param + ", error: " + e.getMessage());
+                    }
+                }
+            }
+
+            AuditCursor after = AuditCursor.decode(afterToken);
+            if (afterToken != null && !afterToken.isEmpty() && after == null) {
+                // Never fall back to the first page, the client would list the same audits again
+                JSONObject resp = new JSONObject();
+                resp.put("success", false);
+                resp.put("message", "Invalid cursor");
+                sendJson(exchange, resp);
+                return;
+            }
+            // One extra row tells whether another page exists
+            List<Map<String, Object>> audits = auditDao.queryAudits(action, operator, target, since, until, after, pageSize + 1);
+            if (audits == null) {
+                JSONObject resp = new JSONObject();
+                resp.put("success", false);
+                resp.put("message", "Failed to read audit history");
+                sendJson(exchange, resp);
+                return;
+            }
+            boolean hasNext = audits.size() > pageSize;
+            if (hasNext) audits = audits.subList(0, pageSize);
+            String nextCursor = hasNext ? AuditCursor.after(audits.get(audits.size() - 1)).encode() : null;
+
+            JSONObject resp = new JSONObject();
+            resp.put("success", true);
+            resp.put("audits", new JSONArray(audits));
+            resp.put("pagination", new JSONObject()
+                .put("pageSize", pageSize)
+                .put("hasNext", hasNext)
+                .put("nextCursor", nextCursor != null ? nextCursor : JSONObject.NULL)
+            );
+            sendJson(exchange, resp);
+        });
+
+        // Runtime metrics - requires authentication
+        createContext("/api/metrics", exchange -> {
+            if (!isAuthenticated(exchange)) {
+                JSONObject resp = new JSONObject();
+                resp.put("success", false);
+                resp.put("message", "Authentication required");
+                sendJson(exchange, resp);
+                return;
+            }
+
+            JSONObject resp = new JSONObject();
+            resp.put("success", true);
+            resp.put("whitelistQueue", new JSONObject()
+                .put("depth", whitelistQueue.getQueueDepth())
+                .put("peakDepth", whitelistQueue.getPeakQueueDepth())
+                .put("enqueued", whitelistQueue.getEnqueuedCount())
+                .put("coalesced", whitelistQueue.getCoalescedCount())
+                .put("applied", whitelistQueue.getAppliedCount())
+                .put("skipped", whitelistQueue.getSkippedCount())
+                .put("failed", whitelistQueue.getFailedCount())
+                .put("lastBatchSize", whitelistQueue.getLastBatchSize())
+                .put("lastDrainMicros", whitelistQueue.getLastDrainMicros())
+            );
+            resp.put("httpExecutor", new JSONObject()
+                .put("type", executor.getType())
+                .put("limit", executor.getLimit())
+                .put("active", executor.getActiveCount())
+                .put("queued", executor.getQueuedCount())
+                .put("rejected", executor.getRejectedCount())
+            );
+            resp.put("mailOutbox", mailService.getOutboxStats());
+            resp.put("verifyCodes", new JSONObject()
+                .put("activeCodes", codeService.getActiveCodeCount())
+                .put("activeRateLimits", codeService.getActiveRateLimitCount())
+                .put("pendingExpiries", codeService.getPendingExpiryCount())
+                .put("expired", codeService.getExpiredCount())
+            );
+            resp.put("sendCodeLimits", new JSONObject()
+                .put("enabled", sendLimiter.isEnabled())
+                .put("allowed", sendLimiter.getAllowedCount())
+                .put("rejectedIp", sendLimiter.getIpRejectedCount())
+                .put("rejectedDomain", sendLimiter.getDomainRejectedCount())
+                .put("rejectedGlobal", sendLimiter.getGlobalRejectedCount())
+                .put("trackedIps", sendLimiter.getTrackedIpCount())
+                .put("trackedDomains", sendLimiter.getTrackedDomainCount())
+            );
+            resp.put("auditRecorder", new JSONObject()
+                .put("depth", auditRecorder.getQueueDepth())
+                .put("published", auditRecorder.getPublishedCount())
+                .put("written", auditRecorder.getWrittenCount())
+                .put("batches", auditRecorder.getBatchCount())
+                .put("lastBatchSize", auditRecorder.getLastBatchSize())
+                .put("dropped", auditRecorder.getDroppedCount())
+                .put("failed", auditRecorder.getFailedCount())
+                .put("callerRuns", auditRecorder.getCallerRunsCount())
+            );
+            resp.put("endpoints", requestMetrics.toJson());
+            sendJson(exchange, resp);
+        });
+
+        // Handlers run on a bounded worker pool instead of the single dispatcher thread
+        executor = new HttpExecutor(plugin);
+        server.setExecutor(executor);
         server.start();
+        debugLog("Web server executor: " + executor.getType() + ", limit " + executor.getLimit());
+    }
+
+    /**
+     * Register a handler with request metrics and overload protection
+     * @param path Context path
+     * @param handler Request handler
+     * @return Created context
+     */
+    private HttpContext createContext(String path, HttpHandler handler) {
+        HttpContext context = server.createContext(path, handler);
+        context.getFilters().add(requestMetrics);
+        return context;
     }
 
     public void stop() {
         if (server != null) server.stop(0);
+        if (executor != null) executor.shutdown();
     }
 
     // Static resource handler
@@ -0,0 +1,69 @@
+package team.kitemc.verifymc.db;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.logging.Logger;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.plugin.Plugin;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class JournalUserDaoTest {
+    @TempDir
+    Path dir;
+
+    private static Plugin plugin() {
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("storage.journal.fsync", false);
+        Logger logger = Logger.getLogger("VerifyMC-test");
+        return (Plugin) Proxy.newProxyInstance(Plugin.class.getClassLoader(), new Class<?>[]{Plugin.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getConfig": return config;
+                        case "getLogger": return logger;
+                        default: return null;
+                    }
+                });
+    }
+
+    private static String put(String uuid, String username) {
+        return "{\"op\":\"put\",\"uuid\":\"" + uuid + "\",\"user\":{\"uuid\":\"" + uuid + "\",\"username\":\"" + username
+                + "\",\"email\":\"" + username + "@example.com\",\"status\":\"approved\",\"regTime\":\"1\"}}\n";
+    }
+
+    private JournalUserDao open(String journal) throws IOException {
+        File journalFile = dir.resolve("users.journal").toFile();
+        Files.write(journalFile.toPath(), journal.getBytes(StandardCharsets.UTF_8));
+        return new JournalUserDao(dir.resolve("users.json").toFile(), journalFile, plugin());
+    }
+
+    @Test
+    void trailingPartialRecordIsDiscarded() throws IOException {
+        String committed = put("u1", "alice") + put("u2", "bob");
+        JournalUserDao dao = open(committed + "{\"op\":\"put\",\"uuid\":\"u3\",\"us");
+
+        assertNotNull(dao.getUserByUuid("u1"));
+        assertNotNull(dao.getUserByUuid("u2"));
+        assertNull(dao.getUserByUuid("u3"));
+        assertEquals(committed, Files.readString(dir.resolve("users.journal")));
+        dao.close();
+    }
+
+    @Test
+    void unreadableRecordIsSkippedAndLaterRecordsApply() throws IOException {
+        String journal = put("u1", "alice") + "{not json\n" + put("u2", "bob")
+                + "{\"op\":\"del\",\"uuid\":\"u1\"}\n";
+        JournalUserDao dao = open(journal);
+
+        assertNull(dao.getUserByUuid("u1"));
+        assertEquals("bob", dao.getUserByUuid("u2").get("username"));
+        assertEquals(journal, Files.readString(dir.resolve("users.journal.corrupt")));
+        dao.close();
+    }
+}